@@ -4,28 +4,67 @@ import java.util.*;
 
 import static main.PlayerColor.*;
 import static main.Checker.*;
-import static main.MoveDirection.*;
 
 /**
  * Created by Chaoyue on 5/3/16.
  */
 public class AI {
+    public enum MoveSource {    //Where the move taken by a search came from.
+        BOOK, ONE_STEP, TABLEBASE, SOLVER, SEARCH, MONTE_CARLO
+    }
+
+    private static class Ponder {   //A search of the position after the expected reply of the human, run while the human thinks.
+        final ChessBoard board;     //The position searched, the computer to move.
+        final SearchWorker[] workers;
+        final Thread[] threads;     //Every worker runs on its own thread, the main worker too.
+        final SearchMetrics metrics;
+        final SearchEvent event;
+
+        Ponder(ChessBoard board, SearchWorker[] workers, Thread[] threads, SearchMetrics metrics, SearchEvent event){
+            this.board = board;
+            this.workers = workers;
+            this.threads = threads;
+            this.metrics = metrics;
+            this.event = event;
+        }
+    }
+
     public final static float MAX = 100000; // Max value of utility. Return this value if computer wins.
     public final static float MIN = -100000;    // Min value of utility. Return this value if human wins.
     public final static long TIMELIMIT = 10000;     //Time limit to 10s.
-    private final static MoveDirection[] VALIDMOVES= new MoveDirection[]{UP,DOWN,LEFT,RIGHT,UP_MAINDIAGONAL,DOWN_MAINDIAGONAL,UP_COUNTERDIAGONAL,DOWN_COUNTERDIAGONAL}; //The 8 valid directions. Used when go through all the possible moves.
-    private HashMap<Move, Float> actions = new HashMap<>(); //Stored all the possible moves and its value of the root status.
+    public final static int MAX_MOVES = 128;    //Size of a move buffer, more than the moves of 12 checkers in 8 directions.
+    public final static long SOLVER_NODES = 20000;  //Default node budget of the proof-number search.
+    public final static int MONTE_CARLO = 4;    //Difficulty played by the Monte Carlo tree search instead of the alpha-beta search.
     private final PlayerColor computer;
     private final PlayerColor human;
-    private final int limit; // Deepest depth the search will go. In easy mode it is 5, while in medium and hard mode it's 7.
+    private int limit; // Deepest depth the search will go. In easy mode it is 5, while in medium and hard mode it's 7.
+    private long timeLimit = TIMELIMIT;     //Time limit of a search in ms.
+    private long nodeLimit = 0;     //Node limit of a search shared by the workers, 0 for no limit.
+    private SearchListener searchListener;  //Told about every completed iteration, null if nobody listens.
     private final int difficulty;   //Choose the evaluation function depend on the difficulty.
-    private int finalDepth = 0;     // Store the deepest depth search go.
-    private int nodeNum = 0;    //Store the number of node discovered.
-    private int maxNum = 0;     //Store the number of time evaluation function called in maxValue function.
-    private int minNum = 0;     //Store the number of time evaluation function called in minValue function.
-    private int maxPruningNum = 0;   //Store the number of time the tree was pruned in maxValue function.
-    private int minPruningNum = 0;  //Store the number of time the tree was pruned in minValue function.
+    private CenterDistance centerDistance;    //Distance to the center of mass used by the evaluation function, decided by the difficulty.
+    private boolean verbose = true;     //Print the statistics of every search.
+    private final SearchOptions searchOptions = new SearchOptions();   //Null-move pruning and late-move reductions of the alpha-beta search.
+    private boolean metricsEnabled = true;  //Collect the metrics of every search, the statistics are printed from them.
+    private volatile SearchMetrics metrics;     //Metrics of the running or last search, null when they are off.
+    private int threadNum = 1;  //Number of worker threads searching in parallel.
+    private SearchWorker[] workers = new SearchWorker[0];  //Workers of the last search, kept for the statistics.
+    private volatile boolean stopped = false;   //Set to stop all the workers of the running search.
+    private volatile long deadline = Long.MAX_VALUE;    //Time the running search must stop at, there is none while pondering.
+    private Ponder ponder;  //The running or finished ponder search, null if there is none.
+    private int[][] historyTables = new int[0][];   //History table of each worker, kept between searches and decayed before each one.
     private long time;     //Store the time used.
+    private MoveSource moveSource;  //Where the move of the last search came from.
+    private float bestValue;    //Value of the move of the last search: MAX or MIN when the result is proven, 0 for a book move, the win rate for a Monte Carlo move.
+    private List<Move> principalVariation = Collections.emptyList();    //Principal variation of the last search.
+    private final TranspositionTable transpositionTable = new TranspositionTable(TranspositionTable.DEFAULT_SIZE);  //Results of searched positions, kept between moves.
+    private EvaluationCache evaluationCache = new EvaluationCache(EvaluationCache.DEFAULT_SIZE);  //Values of evaluated positions, null turns it off.
+    private long solverNodeLimit = SOLVER_NODES;    //Node budget of the proof-number search on the 5*5 board, 0 turns it off.
+    private ProofNumberSearch solver;   //Created when first used.
+    private long monteCarloMemory = MonteCarloSearch.DEFAULT_MEMORY;    //Memory cap of the Monte Carlo tree in bytes.
+    private MonteCarloSearch monteCarlo;    //Created when first used, the node pool is kept between searches.
+    private Tablebase tablebase = Tablebase.getDefault();   //Exact results of the 5*5 endgames, null if there is no tablebase file.
+    private OpeningBook openingBook = OpeningBook.getDefault();     //Moves of the early positions, null if there is no book file.
 
 
 
@@ -33,6 +72,7 @@ public class AI {
         this.difficulty = difficulty;
         this.human = human;
         this.computer = commputer;
+        this.centerDistance = CenterDistance.forDifficulty(difficulty);
         if (difficulty == 1){
             this.limit = 5;
         }else{
@@ -41,13 +81,174 @@ public class AI {
     }
 
     public void aiInitialize(){ //Initialize all the count before calling the ai.
-        actions.clear();
-        finalDepth = 0;
-        nodeNum = 0;
-        maxNum = 0;
-        minNum = 0;
-        maxPruningNum = 0;
-        minPruningNum = 0;
+        workers = new SearchWorker[0];
+        metrics = null;
+        stopped = false;
+    }
+
+    private void newSearch(){
+        /*
+        Prepare the tables shared by the workers for a new search: age the transposition table, reset the statistics and
+        decay the history scores. Only called while no ponder search is running, since its workers write the same tables.
+         */
+        transpositionTable.newSearch();
+        if (evaluationCache != null){
+            evaluationCache.newSearch();
+        }
+        for (int[] history: historyTables){     //Halve the history scores, so older searches count less.
+            for (int i = 0; i < history.length; i++){
+                history[i] >>= 1;
+            }
+        }
+    }
+
+    public void newGame(){  //Forget what earlier searches learnt: the transposition table and the history tables.
+        stopPondering();
+        transpositionTable.clear();
+        for (int[] history: historyTables){
+            Arrays.fill(history, 0);
+        }
+    }
+
+    public void setThreadNum(int threadNum){    //Set the number of worker threads used by the search.
+        if (threadNum < 1){
+            throw new IllegalArgumentException("Illegal number of threads!");
+        }
+        this.threadNum = threadNum;
+    }
+
+    public int getThreadNum() {
+        return threadNum;
+    }
+
+    public void setDepthLimit(int limit){   //Override the deepest depth decided by the difficulty.
+        if (limit < 1){
+            throw new IllegalArgumentException("Illegal depth limit!");
+        }
+        this.limit = limit;
+    }
+
+    public int getDepthLimit() {
+        return limit;
+    }
+
+    public void setNodeLimit(long nodeLimit){   //Set the number of nodes a search may take, 0 for no limit.
+        if (nodeLimit < 0){
+            throw new IllegalArgumentException("Illegal node limit!");
+        }
+        this.nodeLimit = nodeLimit;
+    }
+
+    public long getWorkerNodeLimit(){   //Nodes each worker may search, the node limit split between the workers.
+        return nodeLimit == 0 ? Long.MAX_VALUE : Math.max(1, nodeLimit / threadNum);
+    }
+
+    public void setSearchListener(SearchListener searchListener){
+        this.searchListener = searchListener;
+    }
+
+    public void iterationCompleted(int depth, float value, int[] principalVariation, BoardGeometry geometry, long elapsed){
+        //Called by the main worker after every completed iteration, tell the listener.
+        SearchListener listener = searchListener;
+        if (listener != null && principalVariation.length > 0 && principalVariation[0] != TranspositionTable.NO_MOVE){
+            listener.iterationCompleted(depth, value, toMoves(principalVariation, geometry), getNodeNum(), elapsed);
+        }
+    }
+
+    private static List<Move> toMoves(int[] packedMoves, BoardGeometry geometry){
+        List<Move> moves = new ArrayList<>(packedMoves.length);
+        for (int packedMove: packedMoves){
+            moves.add(PackedMove.toMove(packedMove, geometry));
+        }
+        return moves;
+    }
+
+    public void setTimeLimit(long timeLimit){   //Override the time limit of a search, in ms.
+        if (timeLimit < 1){
+            throw new IllegalArgumentException("Illegal time limit!");
+        }
+        this.timeLimit = timeLimit;
+    }
+
+    public void setCenterDistance(CenterDistance centerDistance){   //Override the distance used by the evaluation function.
+        this.centerDistance = centerDistance;
+        if (evaluationCache != null){   //The cached values were computed with the old distance.
+            evaluationCache.clear();
+        }
+    }
+
+    public void setEvaluationCacheSize(int size){   //Set the number of entries of the evaluation cache, 0 turns it off.
+        if (size < 0){
+            throw new IllegalArgumentException("Illegal cache size!");
+        }
+        this.evaluationCache = size == 0 ? null : new EvaluationCache(size);
+    }
+
+    public EvaluationCache getEvaluationCache() {   //The evaluation cache with the statistics of the last search, null when it is off.
+        return evaluationCache;
+    }
+
+    public void setSolverNodeLimit(long solverNodeLimit){   //Set the node budget of the proof-number search, 0 turns it off.
+        if (solverNodeLimit < 0){
+            throw new IllegalArgumentException("Illegal node limit!");
+        }
+        this.solverNodeLimit = solverNodeLimit;
+    }
+
+    public void setMonteCarloMemory(long monteCarloMemory){     //Set the memory cap of the Monte Carlo tree in bytes.
+        if (monteCarloMemory / MonteCarloSearch.NODE_BYTES < 1024){
+            throw new IllegalArgumentException("Illegal memory size!");
+        }
+        this.monteCarloMemory = monteCarloMemory;
+        this.monteCarlo = null;
+    }
+
+    public MonteCarloSearch getMonteCarlo() {   //The Monte Carlo tree search with the statistics of its last search, null if it was never used.
+        return monteCarlo;
+    }
+
+    public void setTablebase(Tablebase tablebase){  //Override the tablebase, null turns it off.
+        this.tablebase = tablebase;
+    }
+
+    public Tablebase getTablebase() {
+        return tablebase;
+    }
+
+    public void setOpeningBook(OpeningBook openingBook){    //Override the opening book, null turns it off.
+        this.openingBook = openingBook;
+    }
+
+    public void setVerbose(boolean verbose){    //Turn the printing of the search statistics on or off.
+        this.verbose = verbose;
+    }
+
+    public SearchOptions getSearchOptions() {   //The options of the next searches, they can be changed in place.
+        return searchOptions;
+    }
+
+    public void setMetricsEnabled(boolean metricsEnabled){  //Turn the collection of the search metrics on or off.
+        this.metricsEnabled = metricsEnabled;
+    }
+
+    public SearchMetrics getMetrics() {     //Metrics of the running or last search, they can be read during the search. null when they are off.
+        return metrics;
+    }
+
+    public PlayerColor getComputer() {
+        return computer;
+    }
+
+    public void stopSearch(){   //Stop all the workers of the running search.
+        stopped = true;
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    public long getDeadline() {
+        return deadline;
     }
 
     public float computeAverageSquareDistanceToCenter(PlayerColor playerColor, ChessBoard board){
@@ -57,209 +258,498 @@ public class AI {
         In difficulty 1 (easy), distance between checker and COM is the smaller difference value of row and column.
         In difficulty 2 (medium), distance between checker and COM is the larger difference value of row and column.
         In difficulty 3 (hard), distance between checker and COM is the sum of difference value of row and column.
+        The center of mass comes from the row and column sums kept by the board, and the distances are summed by the
+        CenterDistance chosen for the difficulty.
          */
-        Checker checker = getCheckerColor(playerColor);
-        ArrayList<BoardLocation> boardLocations = board.getCheckerLocations(checker);
-        float sumR = 0;
-        float sumC = 0;
-        int checkerNum = boardLocations.size();
-        for (BoardLocation location : boardLocations){
-            sumR +=location.getRow();
-            sumC +=location.getColumn();
-        }
-        float aveR = sumR/checkerNum;   //row num of center of mass
-        float aveC = sumC/checkerNum;   //column num of center of mass
-        float sum = 0;
-        for (BoardLocation location: boardLocations){
-            float dR = Math.abs(aveR - location.getRow());
-            float dC = Math.abs(aveC - location.getColumn());
-            if (difficulty == 1){
-                sum += Math.min(dR, dC);    //In the easy mode, sum up the smaller difference value of row and column to COM.
-            }else if (difficulty ==2){
-                sum += Math.max(dR, dC);    //In the medium mode, sum up the larger difference value of row and column to COM.
-            }else{
-                sum += dR + dC;     //In the hard mode, sum up the both difference value of row and column to COM.
-            }
-        }
+        int checkerNum = board.getCheckerNum(playerColor);
+        float aveR = (float) board.getRowSum(playerColor)/checkerNum;   //row num of center of mass
+        float aveC = (float) board.getColumnSum(playerColor)/checkerNum;   //column num of center of mass
+        float sum = centerDistance.sumDistances(board.getPlayerMask(playerColor), board.geometry, aveR, aveC);
         sum *= 1000;     //Multiply the sum by 1000 to make it easier to read and tell difference.
         return sum/checkerNum;
     }
 
     public float evaluationFunc(ChessBoard board){
-        return computeAverageSquareDistanceToCenter(human, board) - computeAverageSquareDistanceToCenter(computer, board);
+        /*
+        The value does not depend on the player to move, so the cache is keyed by the hash of the checkers alone and a
+        position reached by another move order is not evaluated again.
+         */
+        EvaluationCache cache = evaluationCache;
+        if (cache == null){
+            return computeAverageSquareDistanceToCenter(human, board) - computeAverageSquareDistanceToCenter(computer, board);
+        }
+        long entry = cache.probe(board.zobristKey);
+        if (entry != 0){
+            return EvaluationCache.valueOf(entry);
+        }
+        float value = computeAverageSquareDistanceToCenter(human, board) - computeAverageSquareDistanceToCenter(computer, board);
+        cache.store(board.zobristKey, value);
+        return value;
     }
 
-    public Move alphaBetaSearch(ChessBoard startBoard){ //The alpha-beta search.
-        Float value;    //Store the value returned by search. And decide the move by this value.
+    public Move alphaBetaSearch(ChessBoard startBoard){
+        /*
+        The alpha-beta search with iterative deepening, run by threadNum workers sharing the transposition table.
+        Each worker searches to depth 1, 2, ... up to the limit and searches the best move of the previous iteration first.
+        When the time is out, every worker throws its unfinished iteration away, and the best move of the deepest
+        completed iteration is taken.
+        Return null if the computer has no valid move at all, which loses the game like in the search.
+         */
         time = System.currentTimeMillis();  // Set the start time when search begin
-        Move oneMove = oneStepMoveCheck(startBoard);    //Check if the computer can win by one step. If so, take this step. In case it choose other step which also has the highest value.
-        if (oneMove != null){
-            return oneMove;
-        }
-        value = maxValue(startBoard,MIN,MAX,0);
-        System.out.printf("Total depth is %d. %nTotal number of nodes generated is %d. %n" +
-                "Number of times the evaluation function was called in MaxValue function is %d. %n" +
-                "Number of times the evaluation function was called in MinValue function is %d. %n" +
-                "Number of times pruning in MaxValue is %d. %n" +
-                "Number of times pruning in MinValue is %d. %n", finalDepth, nodeNum, maxNum, minNum, maxPruningNum, minPruningNum);
-        Move move = retrieveMoveFromMap(actions,value); //Get the move depend on the value.
+        deadline = time + timeLimit;    //A ponder search of this position gets the time limit from now.
+        Ponder hit = takePonder(startBoard);
+        if (startBoard.generateMoves(computer, new int[MAX_MOVES]) == 0){
+            if (hit != null){
+                finishPonder(hit);
+            }
+            return noMove();
+        }
+        if (hit == null){   //A ponder hit continues the search the tables were prepared for.
+            newSearch();
+        }
+        Move quickMove = quickMove(startBoard);
+        if (quickMove != null){
+            if (hit != null){
+                finishPonder(hit);
+            }
+            return quickMove;
+        }
+        if (difficulty == MONTE_CARLO){
+            if (hit != null){
+                finishPonder(hit);
+            }
+            return monteCarloMove(startBoard);
+        }
+        SearchEvent event;
+        SearchMetrics searchMetrics;
+        Thread[] threads;
+        if (hit != null){   //Continue the ponder search, it already searched this position while the human thought.
+            event = hit.event;
+            searchMetrics = hit.metrics;
+            workers = hit.workers;
+            threads = hit.threads;
+            metrics = searchMetrics;
+            if (verbose){
+                System.out.printf("Ponder hit, %d nodes already searched. %n", getNodeNum());
+            }
+        }else{
+            event = new SearchEvent();
+            event.begin();
+            searchMetrics = metricsEnabled ? new SearchMetrics(threadNum, limit) : null;
+            metrics = searchMetrics;
+            workers = createWorkers(startBoard, time, searchMetrics);
+            threads = new Thread[threadNum];
+            for (int i = 1; i < threadNum; i++){    //The helpers run on their own threads, the main worker on this one.
+                threads[i] = new Thread(workers[i], "search-worker-" + i);
+                threads[i].start();
+            }
+            workers[0].run();
+        }
+        join(threads[0]);   //A pondering main worker stops the others when it is done.
+        stopSearch();
+        for (int i = 1; i < threads.length; i++){
+            join(threads[i]);
+        }
+        SearchWorker best = workers[0];
+        for (SearchWorker worker: workers){     //Take the deepest completed iteration. The main worker wins the ties.
+            if (worker.getBestMove() != TranspositionTable.NO_MOVE && worker.getFinalDepth() > best.getFinalDepth()){
+                best = worker;
+            }
+        }
+        int packedMove = best.getBestMove();
+        float value = best.getBestValue();
+        if (packedMove == TranspositionTable.NO_MOVE){  //No time to search any move at all.
+            int[] moves = new int[MAX_MOVES];
+            if (startBoard.generateMoves(computer, moves) == 0){
+                return noMove();
+            }
+            packedMove = moves[0];
+        }
+        Move move = found(PackedMove.toMove(packedMove, startBoard.geometry), MoveSource.SEARCH, value);
+        if (packedMove == best.getBestMove() && best.getPrincipalVariation().length > 0){
+            principalVariation = toMoves(best.getPrincipalVariation(), startBoard.geometry);
+        }
+        if (searchMetrics != null){
+            searchMetrics.searchFinished();
+            searchMetrics.commitEvent(event, threadNum);
+        }
+        if (!verbose){
+            return move;
+        }
+        System.out.printf("Total depth is %d. %nTotal number of nodes generated is %d. %n", best.getFinalDepth(), getNodeNum());
+        if (searchMetrics != null){
+            printMetrics(searchMetrics);
+        }
+        long probeNum = transpositionTable.getProbeNum();
+        System.out.printf("Transposition table probes: %d, hits: %d (%.1f%%), collisions: %d. %n",
+                probeNum, transpositionTable.getHitNum(), probeNum == 0 ? 0.0 : 100.0 * transpositionTable.getHitNum() / probeNum, transpositionTable.getCollisionNum());
+        if (evaluationCache != null){
+            long lookupNum = evaluationCache.getHitNum() + evaluationCache.getMissNum();
+            System.out.printf("Evaluation cache hits: %d, misses: %d (%.1f%% hits). %n",
+                    evaluationCache.getHitNum(), evaluationCache.getMissNum(), lookupNum == 0 ? 0.0 : 100.0 * evaluationCache.getHitNum() / lookupNum);
+        }
+        for (SearchWorker worker: workers){
+            StringBuilder depthTimes = new StringBuilder();
+            for (int depth = 1; depth <= worker.getFinalDepth(); depth++){
+                if (worker.getDepthTime(depth) >= 0){
+                    depthTimes.append(String.format(" %d:%dms", depth, worker.getDepthTime(depth)));
+                }
+            }
+            System.out.printf("Thread %d: %d nodes, completed depth %d, time to depth%s. %n",
+                    worker.getId(), worker.getNodeNum(), worker.getFinalDepth(), depthTimes);
+        }
+        StringBuilder line = new StringBuilder();
+        for (Move pvMove: principalVariation){
+            line.append(String.format(" %d%d%d%d", pvMove.getFrom().getRow(), pvMove.getFrom().getColumn(), pvMove.getTo().getRow(), pvMove.getTo().getColumn()));
+        }
+        System.out.printf("Principal variation:%s. %n", line);
         System.out.printf("Take move: %d %d %d %d. With value %f.%n",move.getFrom().getRow(),move.getFrom().getColumn(),move.getTo().getRow(),move.getTo().getColumn(),value);
         return move;
     }
 
-    public Move oneStepMoveCheck(ChessBoard startBoard){   //Check if the computer can win by one step.
+    private Move monteCarloMove(ChessBoard startBoard){
+        //Search the position with the Monte Carlo tree search, on the same threads, time and node limit as the alpha-beta search.
+        if (monteCarlo == null){
+            monteCarlo = new MonteCarloSearch(monteCarloMemory);
+        }
+        int packedMove = monteCarlo.search(this, startBoard, computer, threadNum, nodeLimit == 0 ? Long.MAX_VALUE : nodeLimit);
+        if (packedMove == TranspositionTable.NO_MOVE){
+            return noMove();
+        }
+        Move move = found(PackedMove.toMove(packedMove, startBoard.geometry), MoveSource.MONTE_CARLO, monteCarlo.getBestWinRate());
+        if (verbose){
+            System.out.printf("Monte Carlo tree search: %d playouts, %.0f playouts/s, %d of %d nodes%s. %n", monteCarlo.getPlayoutNum(),
+                    monteCarlo.getPlayoutsPerSecond(), monteCarlo.getNodeNum(), monteCarlo.getCapacity(), monteCarlo.isFull() ? " (full)" : "");
+            System.out.printf("Take move: %d %d %d %d. With win rate %.1f%%.%n", move.getFrom().getRow(), move.getFrom().getColumn(),
+                    move.getTo().getRow(), move.getTo().getColumn(), 100.0 * bestValue);
+        }
+        return move;
+    }
 
-        for (BoardLocation location: startBoard.getCheckerLocations(getCheckerColor(computer))){
-            for (MoveDirection direction: VALIDMOVES){
-                Move oneStepMove = generateMove(location, direction, startBoard.moveCount(location,direction));
-                if (startBoard.moveCheck(oneStepMove,computer)){
-                    ChessBoard oneStepBoard = new ChessBoard(startBoard);
-                    oneStepBoard.makeMove(oneStepMove,computer);
-                    if (oneStepBoard.continuousCheck(computer)){
-                        return oneStepMove;
-                    }
-                }
-            }
+    private Move quickMove(ChessBoard startBoard){
+        //Return the move found without the alpha-beta search: from the book, a win in one move, the tablebase or the solver. null if there is none.
+        Move bookMove = bookMove(startBoard);
+        if (bookMove != null){
+            return found(bookMove, MoveSource.BOOK, 0);
+        }
+        Move oneMove = oneStepMoveCheck(startBoard);    //Check if the computer can win by one step. If so, take this step. In case it choose other step which also has the highest value.
+        if (oneMove != null){
+            return found(oneMove, MoveSource.ONE_STEP, MAX);
+        }
+        Move tablebaseMove = tablebaseMove(startBoard);
+        if (tablebaseMove != null){
+            return found(tablebaseMove, MoveSource.TABLEBASE, Tablebase.isWin(tablebase.probe(startBoard, computer)) ? MAX : MIN);
+        }
+        Move proofMove = proofNumberSearch(startBoard);
+        if (proofMove != null){
+            return found(proofMove, MoveSource.SOLVER, MAX);
         }
         return null;
     }
 
-    public float maxValue(ChessBoard currentBoard, float alpha, float beta, int depth ){
-        nodeNum++;  //Each time called means one more node discovered.
-        if (currentBoard.continuousCheck(computer)){    //If one of the side wins, return the utility value.
-                return MAX;}
-        else if (currentBoard.continuousCheck(human)){
-                return MIN;
-            }
-        Checker currentChecker = getCheckerColor(computer);
-        finalDepth = Math.max(finalDepth, depth);   //Update the deepest depth.
-        long dTime = System.currentTimeMillis() - time; //Check the time goes by since search start.
-        if (depth == limit || dTime > TIMELIMIT){   //If time out or depth limit reached, return the evaluation value.
-            maxNum++;   //number of evaluation functiong called in maxValue function plus one.
-            return evaluationFunc(currentBoard);
-        }
-        float value = MIN;
-        for (BoardLocation location: currentBoard.getCheckerLocations(currentChecker)){ //Go through all the locations of current checker.
-            for (MoveDirection direction: VALIDMOVES){  //Go through all the 8 directions.
-                Move tempMove = generateMove(location, direction, currentBoard.moveCount(location,direction));  //Generate the move by given location and direction.
-                if (currentBoard.moveCheck(tempMove,computer)){     //If the tempMove is valid, create a copy of the current board and take the move.
-                    ChessBoard tempBoard = new ChessBoard(currentBoard);
-                    tempBoard.makeMove(tempMove, computer);
-                    value = Math.max(value, minValue(tempBoard, alpha, beta, depth+1));
-                    if (depth == 0 ){   //If the depth is 0(the move is took on the origin board), save the move and value.
-                        actions.put(tempMove, value);
-                    }
-                    if (value >= beta){ // If the value >= beta, pruning.
-                        maxPruningNum++;
-                        return value;
-                    }
-                    alpha = Math.max(alpha, value);
-                }
+    private SearchWorker[] createWorkers(ChessBoard startBoard, long startTime, SearchMetrics searchMetrics){
+        SearchWorker[] newWorkers = new SearchWorker[threadNum];
+        if (historyTables.length < threadNum){
+            int[][] tables = Arrays.copyOf(historyTables, threadNum);
+            for (int i = historyTables.length; i < threadNum; i++){
+                tables[i] = new int[1 << 12];   //Indexed by the packed move, 6 bits of from square and 6 bits of to square.
             }
+            historyTables = tables;
         }
-        return value;
+        for (int i = 0; i < threadNum; i++){
+            newWorkers[i] = new SearchWorker(this, i, startBoard, transpositionTable, computer, human, limit, startTime, historyTables[i],
+                    searchMetrics);
+        }
+        return newWorkers;
     }
 
-    public float minValue(ChessBoard currentBoard, float alpha, float beta, int depth ){    //Logic is same as the maxValue function.
-        nodeNum++;
-        if (currentBoard.continuousCheck(computer)){
-            //if (player.equals(PLAYER_BK)){
-                return MAX;
-            }
-        else if(currentBoard.continuousCheck(human)){
-                return MIN;
+    private static void join(Thread thread){
+        if (thread == null){
+            return;
+        }
+        try {
+            thread.join();
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean startPondering(ChessBoard board){
+        /*
+        Search on the human's time. The human's reply is guessed from the best move the transposition table keeps for the
+        position, and the position after it is searched on background threads without a time limit. If the human plays the
+        guessed move, the next alphaBetaSearch continues this search with the time limit counted from then. Otherwise the
+        search is stopped and thrown away, but what it stored in the shared transposition table is kept.
+        Return false when there is no move to guess or the guessed move ends the game.
+         */
+        stopPondering();
+        int reply = expectedReply(board);
+        if (reply == TranspositionTable.NO_MOVE){
+            return false;
+        }
+        ChessBoard ponderBoard = new ChessBoard(board);
+        ponderBoard.applyMove(reply, human);
+        if (ponderBoard.continuousCheck(human) || ponderBoard.continuousCheck(computer)){
+            return false;
+        }
+        ponderBoard = new ChessBoard(ponderBoard);  //A fresh copy, without the undo record.
+        newSearch();
+        stopped = false;
+        deadline = Long.MAX_VALUE;
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        SearchMetrics searchMetrics = metricsEnabled ? new SearchMetrics(threadNum, limit) : null;
+        SearchWorker[] ponderWorkers = createWorkers(ponderBoard, System.currentTimeMillis(), searchMetrics);
+        Thread[] threads = new Thread[threadNum];
+        for (int i = 0; i < threadNum; i++){
+            threads[i] = new Thread(ponderWorkers[i], "ponder-worker-" + i);
+            threads[i].setDaemon(true);     //Never keep the program alive.
+            threads[i].start();
+        }
+        ponder = new Ponder(ponderBoard, ponderWorkers, threads, searchMetrics, event);
+        return true;
+    }
+
+    public void stopPondering(){    //Stop and throw away the ponder search, if there is one.
+        Ponder current = ponder;
+        ponder = null;
+        if (current != null){
+            finishPonder(current);
+        }
+    }
+
+    private Ponder takePonder(ChessBoard startBoard){
+        //Return the ponder search if it searched this position. Any other ponder search is stopped and thrown away.
+        Ponder current = ponder;
+        ponder = null;
+        if (current == null){
+            return null;
+        }
+        if (current.board.getPlayerMask(PLAYER_BK) == startBoard.getPlayerMask(PLAYER_BK)
+                && current.board.getPlayerMask(PLAYER_WH) == startBoard.getPlayerMask(PLAYER_WH)){
+            return current;
+        }
+        finishPonder(current);
+        if (verbose){
+            System.out.printf("Ponder miss. %n");
+        }
+        return null;
+    }
+
+    private void finishPonder(Ponder current){  //Stop the workers of a ponder search and wait for them.
+        stopSearch();
+        for (Thread thread: current.threads){
+            join(thread);
+        }
+        stopped = false;
+    }
+
+    private int expectedReply(ChessBoard board){
+        //The best move of the human stored in the transposition table, if it is a valid move. TranspositionTable.NO_MOVE otherwise.
+        long entry = transpositionTable.probe(board.positionKey(human));
+        if (entry == 0 || TranspositionTable.moveOf(entry) == TranspositionTable.NO_MOVE){
+            return TranspositionTable.NO_MOVE;
+        }
+        int storedMove = TranspositionTable.moveOf(entry);
+        int[] moves = new int[MAX_MOVES];
+        int moveNum = board.generateMoves(human, moves);
+        for (int i = 0; i < moveNum; i++){
+            if (PackedMove.sameSquares(moves[i], storedMove)){
+                return moves[i];
             }
-        Checker currentChecker = getCheckerColor(human);
-        finalDepth = Math.max(finalDepth, depth);
-        long dTime = System.currentTimeMillis() - time;
-        if (depth == limit || dTime > TIMELIMIT){
-            minNum++;
-            return evaluationFunc(currentBoard);
-        }
-        float value = MAX;
-        for (BoardLocation location: currentBoard.getCheckerLocations(currentChecker)){
-            for (MoveDirection direction: VALIDMOVES){
-                Move tempMove = generateMove(location, direction, currentBoard.moveCount(location,direction));
-                if (currentBoard.moveCheck(tempMove,human)){
-                    //System.out.printf("Current depth of min is %d. %n",depth);
-                    ChessBoard tempBoard = new ChessBoard(currentBoard);
-                    tempBoard.makeMove(tempMove, human);
-                    value = Math.min(value, maxValue(tempBoard, alpha, beta, depth+1));
-                    if (depth == 0 ){
-                        actions.put(tempMove, value);
-                    }
-                    if (value <= alpha){
-                        minPruningNum++;
-                        return value;
-                    }
-                    beta = Math.min(beta, value);
+        }
+        return TranspositionTable.NO_MOVE;
+    }
+
+    private void printMetrics(SearchMetrics searchMetrics){
+        System.out.printf("Search time %d ms, %.0f nodes/s, effective branching factor %.2f. %n",
+                searchMetrics.getElapsedNanos() / 1000000, searchMetrics.getNodesPerSecond(), searchMetrics.getEffectiveBranchingFactor());
+        System.out.printf("Number of times the evaluation function was called in MaxValue function is %d, in MinValue function %d. %n",
+                searchMetrics.get(SearchMetrics.Counter.MAX_EVALUATIONS), searchMetrics.get(SearchMetrics.Counter.MIN_EVALUATIONS));
+        System.out.printf("Number of times pruning in MaxValue is %d, by the first move %d. %n" +
+                "Number of times pruning in MinValue is %d, by the first move %d. %n" +
+                "Pruning by the first move: %.1f%%. Connectivity checks: %d. %n",
+                searchMetrics.get(SearchMetrics.Counter.MAX_CUTOFFS), searchMetrics.get(SearchMetrics.Counter.MAX_FIRST_MOVE_CUTOFFS),
+                searchMetrics.get(SearchMetrics.Counter.MIN_CUTOFFS), searchMetrics.get(SearchMetrics.Counter.MIN_FIRST_MOVE_CUTOFFS),
+                100 * searchMetrics.getFirstMoveCutoffRate(), searchMetrics.get(SearchMetrics.Counter.CONNECTIVITY_CHECKS));
+        if (tablebase != null){
+            System.out.printf("Tablebase hits: %d. %n", searchMetrics.get(SearchMetrics.Counter.TABLEBASE_HITS));
+        }
+        StringBuilder depthNodes = new StringBuilder();
+        for (int depth = 0; depth <= searchMetrics.getMaxDepth() && searchMetrics.getDepthNodes(depth) > 0; depth++){
+            depthNodes.append(String.format(" %d:%d", depth, searchMetrics.getDepthNodes(depth)));
+        }
+        System.out.printf("Nodes at depth%s. %n", depthNodes);
+    }
+
+    private Move found(Move move, MoveSource source, float value){  //Remember where the move of the search came from and its value.
+        moveSource = source;
+        bestValue = value;
+        principalVariation = Collections.singletonList(move);
+        return move;
+    }
+
+    private Move noMove(){  //Remember that the computer had no move, and return null for it.
+        moveSource = null;
+        bestValue = MIN;
+        principalVariation = Collections.emptyList();
+        if (verbose){
+            System.out.printf("No valid move left. %n");
+        }
+        return null;
+    }
+
+    public List<Move> getPrincipalVariation() {     //Expected moves of both sides from the last search on, starting with the move taken.
+        return principalVariation;
+    }
+
+    public MoveSource getMoveSource() {     //null when the computer had no move.
+        return moveSource;
+    }
+
+    public float getBestValue() {
+        return bestValue;
+    }
+
+    public Move bookMove(ChessBoard startBoard){
+        //Return the move of the opening book for the position and the difficulty, or null if the book has none.
+        if (openingBook == null){
+            return null;
+        }
+        int packedMove = openingBook.lookup(startBoard.positionKey(computer), difficulty);
+        if (packedMove == TranspositionTable.NO_MOVE){
+            return null;
+        }
+        int[] moves = new int[MAX_MOVES];
+        int moveNum = startBoard.generateMoves(computer, moves);
+        for (int i = 0; i < moveNum; i++){  //Only trust the book if its move is valid here, in case two positions have the same key.
+            if (PackedMove.sameSquares(moves[i], packedMove)){
+                Move move = PackedMove.toMove(moves[i], startBoard.geometry);
+                if (verbose){
+                    System.out.printf("Take move: %d %d %d %d. From the opening book.%n",move.getFrom().getRow(),move.getFrom().getColumn(),move.getTo().getRow(),move.getTo().getColumn());
                 }
+                return move;
             }
         }
-        return value;
+        return null;
     }
 
-    public Move retrieveMoveFromMap(HashMap<Move,Float> actions, float value){  //Choose a move from all possible moves, If there are more than one moves share the same highest value, randomly pick one.
-        Move move;
-        Random random = new Random();
-        ArrayList<Move> moveList = new ArrayList<>();
-        for (Map.Entry<Move, Float> entry: actions.entrySet()){
-            move = entry.getKey();
-            if (entry.getValue() == value){
-                moveList.add(move);
+    public Move tablebaseMove(ChessBoard startBoard){
+        /*
+        If the position is a win or a loss in the tablebase, return the move keeping the result: the fastest win, or the
+        slowest loss. Otherwise return null, a draw is left to the search, which looks up the draws of the children too.
+         */
+        if (tablebase == null){
+            return null;
+        }
+        int value = tablebase.probe(startBoard, computer);
+        if (!Tablebase.isWin(value) && !Tablebase.isLoss(value)){
+            return null;
+        }
+        int[] moves = new int[MAX_MOVES];
+        int moveNum = startBoard.generateMoves(computer, moves);
+        int bestMove = TranspositionTable.NO_MOVE;
+        int bestDistance = -1;
+        for (int i = 0; i < moveNum; i++){
+            startBoard.applyMove(moves[i], computer);
+            int childValue = tablebase.probe(startBoard, human);
+            startBoard.undoMove();
+            int distance = Tablebase.distanceOf(childValue);
+            if (Tablebase.isWin(value) ? Tablebase.isLoss(childValue) && distance == Tablebase.distanceOf(value) - 1
+                    : Tablebase.isWin(childValue) && distance > bestDistance){
+                bestMove = moves[i];
+                bestDistance = distance;
             }
         }
-        move = moveList.get(random.nextInt(moveList.size()));
+        if (bestMove == TranspositionTable.NO_MOVE){    //No move at all, let the search handle it.
+            return null;
+        }
+        Move move = PackedMove.toMove(bestMove, startBoard.geometry);
+        if (verbose){
+            System.out.printf("Take move: %d %d %d %d. Tablebase %s in %d plies.%n",move.getFrom().getRow(),move.getFrom().getColumn(),
+                    move.getTo().getRow(),move.getTo().getColumn(), Tablebase.isWin(value) ? "win" : "loss", Tablebase.distanceOf(value));
+        }
+        return move;
+    }
+
+    public Move proofNumberSearch(ChessBoard startBoard){
+        /*
+        On the 5*5 board, try to solve a tactical position with the proof-number search before the alpha-beta search.
+        Return the winning move if a win is proven, otherwise null and the alpha-beta search decides as usual.
+         */
+        if (startBoard.boardSize != 5 || solverNodeLimit == 0 || !looksTactical(startBoard)){
+            return null;
+        }
+        if (solver == null){
+            solver = new ProofNumberSearch(ProofNumberSearch.DEFAULT_SIZE);
+        }
+        ProofNumberSearch.Result result = solver.solve(startBoard, computer, solverNodeLimit);
+        if (verbose){
+            System.out.printf("Proof-number search: %s in %d nodes. %n", result, solver.getNodeNum());
+        }
+        if (result != ProofNumberSearch.Result.WIN){
+            return null;
+        }
+        Move move = PackedMove.toMove(solver.getProofMove(), startBoard.geometry);
+        if (verbose){
+            System.out.printf("Take move: %d %d %d %d. Proven win.%n",move.getFrom().getRow(),move.getFrom().getColumn(),move.getTo().getRow(),move.getTo().getColumn());
+        }
         return move;
     }
 
-    public Move generateMove(BoardLocation location, MoveDirection direction, int moveCount){   //generate a Move by given start location, move direction and move count,
-        int fromRow = location.getRow();
-        int fromColumn = location.getColumn();
-        int toRow;
-        int toColumn;
-        BoardLocation toLocation;
-        switch (direction){
-            case UP:
-                toRow = fromRow - moveCount;
-                toColumn = fromColumn;
-                break;
-            case DOWN:
-                toRow = fromRow + moveCount;
-                toColumn = fromColumn;
-                break;
-            case LEFT:
-                toRow = fromRow;
-                toColumn = fromColumn - moveCount;
-                break;
-            case RIGHT:
-                toRow = fromRow;
-                toColumn = fromColumn + moveCount;
-                break;
-            case UP_MAINDIAGONAL:
-                toRow = fromRow - moveCount;
-                toColumn = fromColumn - moveCount;
-                break;
-            case DOWN_MAINDIAGONAL:
-                toRow = fromRow + moveCount;
-                toColumn = fromColumn + moveCount;
-                break;
-            case UP_COUNTERDIAGONAL:
-                toRow = fromRow - moveCount;
-                toColumn = fromColumn + moveCount;
-                break;
-            case DOWN_COUNTERDIAGONAL:
-                toRow = fromRow + moveCount;
-                toColumn = fromColumn - moveCount;
-                break;
-            default:
-                System.out.printf("Invalid direction! %n");
-                toRow = fromRow;
-                toColumn = fromColumn;
-                break;
-        }
-        toLocation = new BoardLocation(toRow,toColumn);
-        return new Move(location,toLocation);
+    public boolean looksTactical(ChessBoard board){
+        /*
+        A position is tactical when a player has at most 2 checkers outside its largest group, so it may connect in a few
+        moves, or when few checkers are left. Those are the positions the proof-number search can often solve.
+         */
+        if (board.getCheckerNum(PLAYER_BK) + board.getCheckerNum(PLAYER_WH) <= 8){
+            return true;
+        }
+        return board.getCheckerNum(computer) - board.largestGroupSize(computer) <= 2
+                || board.getCheckerNum(human) - board.largestGroupSize(human) <= 2;
+    }
+
+    public int getFinalDepth(){     //Deepest iteration completed by the workers of the last search, 0 if the move was not searched.
+        int depth = 0;
+        for (SearchWorker worker: workers){
+            depth = Math.max(depth, worker.getFinalDepth());
+        }
+        return depth;
+    }
+
+    public long getNodeNum(){   //Number of nodes discovered by all the workers of the last search, the tree size of a Monte Carlo search.
+        if (moveSource == MoveSource.MONTE_CARLO){
+            return monteCarlo.getNodeNum();
+        }
+        long sum = 0;
+        for (SearchWorker worker: workers){
+            sum += worker.getNodeNum();
+        }
+        return sum;
+    }
+
+    public Move oneStepMoveCheck(ChessBoard startBoard){   //Check if the computer can win by one step.
+        int[] moves = new int[MAX_MOVES];
+        int moveNum = startBoard.generateMoves(computer, moves);
+        for (int i = 0; i < moveNum; i++){
+            startBoard.applyMove(moves[i],computer);
+            boolean win = startBoard.continuousCheck(computer);
+            startBoard.undoMove();
+            if (win){
+                return PackedMove.toMove(moves[i], startBoard.geometry);
+            }
+        }
+        return null;
+    }
+
+    public ArrayList<Move> generateMoves(ChessBoard board, PlayerColor player){     //Return all the valid moves of the player as Move objects, for the callers outside the search.
+        int[] moves = new int[MAX_MOVES];
+        int moveNum = board.generateMoves(player, moves);
+        ArrayList<Move> moveList = new ArrayList<>(moveNum);
+        for (int i = 0; i < moveNum; i++){
+            moveList.add(PackedMove.toMove(moves[i], board.geometry));
+        }
+        return moveList;
     }
 
     public Checker getCheckerColor(PlayerColor player){ //Get the checker type by player.
@@ -0,0 +1,209 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static main.PlayerColor.PLAYER_BK;
+import static main.PlayerColor.PLAYER_WH;
+
+/**
+ * Analyses a stream of positions on a pool of worker threads and writes one JSON line per position.
+ *
+ * Every input line is "[ID] TEXT B|W": an optional id, the board in the text form of ChessBoard.parse and the player to
+ * move. Without an id, the line number is used. Blank lines and lines starting with '#' are skipped.
+ * Every output line has the id, the position, the best move (four digits like EngineProtocol), the principal variation,
+ * the score, the depth, the nodes, the time in ms and where the move came from, or the id and an error.
+ *
+ * Each worker thread keeps its own AIs, one per color, which keep their transposition tables from one position to the
+ * next. Only a fixed number of positions are read ahead of the output, so the memory does not depend on the input size.
+ * By default the lines are written in the input order, -unordered writes them as soon as they are done.
+ *
+ * Usage: java main.BatchAnalysis [-in FILE] [-out FILE] [-threads N] [-difficulty 1..4] [-depth N] [-time MS]
+ *                                [-nodes N] [-unordered]
+ */
+public class BatchAnalysis {
+    private static final int WINDOW_PER_THREAD = 4;     //Positions read ahead of the output for each thread.
+    private String inFile = "-";    //"-" for stdin and stdout.
+    private String outFile = "-";
+    private int threadNum = Runtime.getRuntime().availableProcessors();
+    private int difficulty = 3;
+    private int depth = -1;     //-1 keeps the depth of the difficulty.
+    private long time = 1000;
+    private long nodes = 0;
+    private boolean ordered = true;
+    private final ThreadLocal<AI[]> ais = ThreadLocal.withInitial(() -> new AI[2]);     //The AIs of each worker, for black and white to move.
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        BatchAnalysis analysis = new BatchAnalysis();
+        for (int i = 0; i < args.length; i++){
+            switch (args[i]){
+                case "-in":
+                    analysis.inFile = args[++i];
+                    break;
+                case "-out":
+                    analysis.outFile = args[++i];
+                    break;
+                case "-threads":
+                    analysis.threadNum = Integer.parseInt(args[++i]);
+                    break;
+                case "-difficulty":
+                    analysis.difficulty = Integer.parseInt(args[++i]);
+                    break;
+                case "-depth":
+                    analysis.depth = Integer.parseInt(args[++i]);
+                    break;
+                case "-time":
+                    analysis.time = Long.parseLong(args[++i]);
+                    break;
+                case "-nodes":
+                    analysis.nodes = Long.parseLong(args[++i]);
+                    break;
+                case "-unordered":
+                    analysis.ordered = false;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        analysis.run();
+    }
+
+    public void run() throws IOException, InterruptedException, ExecutionException {
+        /*
+        Read the positions and hand them to the pool, keeping at most window of them in flight. When the window is full,
+        wait for the oldest result (or any result with -unordered) and write it before reading on.
+         */
+        long start = System.currentTimeMillis();
+        int window = threadNum * WINDOW_PER_THREAD;
+        ExecutorService pool = Executors.newFixedThreadPool(threadNum);
+        CompletionService<String> completed = new ExecutorCompletionService<>(pool);
+        ArrayDeque<Future<String>> pending = new ArrayDeque<>(window);  //Results not written yet, in the input order.
+        long lineNum = 0;
+        long positionNum = 0;
+        try (BufferedReader in = new BufferedReader(inFile.equals("-") ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+                : Files.newBufferedReader(Paths.get(inFile), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(outFile.equals("-") ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+                     : Files.newBufferedWriter(Paths.get(outFile), StandardCharsets.UTF_8))){
+            String line;
+            while ((line = in.readLine()) != null){
+                lineNum++;
+                String text = line.trim();
+                if (text.isEmpty() || text.startsWith("#")){
+                    continue;
+                }
+                if (pending.size() == window){
+                    writeNext(out, pending, completed);
+                }
+                String defaultId = String.valueOf(lineNum);
+                pending.add(completed.submit(() -> analyse(text, defaultId)));
+                positionNum++;
+            }
+            while (!pending.isEmpty()){
+                writeNext(out, pending, completed);
+            }
+        }finally {
+            pool.shutdownNow();
+        }
+        System.err.printf("Analysed %d positions in %d ms with %d threads.%n", positionNum, System.currentTimeMillis() - start, threadNum);
+    }
+
+    private void writeNext(Writer out, ArrayDeque<Future<String>> pending, CompletionService<String> completed)
+            throws IOException, InterruptedException, ExecutionException {
+        //Write the oldest result, or the first one done when unordered, and forget it.
+        Future<String> result = ordered ? pending.peekFirst() : completed.take();
+        out.write(result.get());
+        out.write('\n');
+        pending.remove(result);
+        if (ordered){   //Every future is in the completion queue too, take this one out to keep the queue small.
+            completed.take();
+        }
+    }
+
+    private String analyse(String line, String defaultId){  //Analyse one input line and return its JSON result.
+        String[] words = line.split("\\s+");
+        String id = words.length >= 3 ? words[0] : defaultId;
+        try {
+            if (words.length < 2 || words.length > 3){
+                throw new IllegalArgumentException("expected [ID] TEXT B|W");
+            }
+            String position = words[words.length - 2];
+            String color = words[words.length - 1];
+            if (!color.equals("B") && !color.equals("W")){
+                throw new IllegalArgumentException("illegal color " + color);
+            }
+            PlayerColor player = color.equals("B") ? PLAYER_BK : PLAYER_WH;
+            ChessBoard board = ChessBoard.parse(position);
+            if (board.continuousCheck(PLAYER_BK) || board.continuousCheck(PLAYER_WH)){
+                throw new IllegalArgumentException("the game is over");
+            }
+            AI ai = aiFor(player);
+            long start = System.currentTimeMillis();
+            ai.aiInitialize();
+            Move move = ai.alphaBetaSearch(board);
+            if (move == null){
+                throw new IllegalArgumentException("no valid move");
+            }
+            long elapsed = System.currentTimeMillis() - start;
+            StringBuilder pv = new StringBuilder();
+            for (Move pvMove: ai.getPrincipalVariation()){
+                pv.append(pv.length() == 0 ? "" : " ").append(moveText(pvMove));
+            }
+            return String.format(Locale.ROOT, "{\"id\":%s,\"position\":\"%s\",\"toMove\":\"%s\",\"bestMove\":\"%s\",\"pv\":\"%s\",\"score\":%.2f,"
+                            + "\"depth\":%d,\"nodes\":%d,\"timeMs\":%d,\"source\":\"%s\"}", quote(id), position, color,
+                    moveText(move), pv, ai.getBestValue(), ai.getFinalDepth(), ai.getNodeNum(), elapsed, ai.getMoveSource());
+        }catch (RuntimeException e){
+            return String.format(Locale.ROOT, "{\"id\":%s,\"error\":%s}", quote(id), quote(String.valueOf(e.getMessage())));
+        }
+    }
+
+    private AI aiFor(PlayerColor player){   //The AI of this worker for the player to move, created when first needed.
+        AI[] workerAis = ais.get();
+        int index = player == PLAYER_BK ? 0 : 1;
+        if (workerAis[index] == null){
+            AI ai = new AI(difficulty, player == PLAYER_BK ? PLAYER_WH : PLAYER_BK, player);
+            if (depth > 0){
+                ai.setDepthLimit(depth);
+            }
+            ai.setTimeLimit(time);
+            ai.setNodeLimit(nodes);
+            ai.setVerbose(false);
+            ai.setMetricsEnabled(false);
+            workerAis[index] = ai;
+        }
+        return workerAis[index];
+    }
+
+    private static String moveText(Move move){  //Four digits like EngineProtocol.
+        return "" + (move.getFrom().getRow() + 1) + (move.getFrom().getColumn() + 1)
+                + (move.getTo().getRow() + 1) + (move.getTo().getColumn() + 1);
+    }
+
+    private static String quote(String text){   //Text as a JSON string.
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c: text.toCharArray()){
+            if (c == '"' || c == '\\'){
+                quoted.append('\\').append(c);
+            }else if (c < 0x20){
+                quoted.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            }else{
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
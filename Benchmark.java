@@ -0,0 +1,266 @@
+package main;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static main.Checker.*;
+import static main.PlayerColor.PLAYER_BK;
+import static main.PlayerColor.PLAYER_WH;
+
+/**
+ * Microbenchmarks of the board and search hot paths, run over a fixed set of opening, middlegame and endgame
+ * positions on both board sizes. Every benchmark is warmed up first, then timed, and the bytes allocated by the
+ * measuring thread are reported per operation next to the time.
+ *
+ * Usage: java main.Benchmark [-warmup MS] [-time MS] [-depth N] [-filter TEXT] [-nullmove on|off] [-lmr on|off]
+ *                             [-pvs on|off] [-aspiration on|off] [-evalcache N]
+ * -filter only runs the benchmarks whose name contains TEXT, for example -filter search.
+ * -nullmove, -lmr, -pvs and -aspiration turn the null-move pruning, the late-move reductions, the principal variation
+ * search and the aspiration windows of the search on or off, so the time to reach a depth can be compared with and
+ * without them. -evalcache sets the entries of the evaluation cache, 0 turns it off.
+ */
+public class Benchmark {
+
+    private static final Position[] POSITIONS = {
+            new Position("5x5 opening", "-BBB-/W---W/W---W/W---W/-BBB-", PLAYER_BK),
+            new Position("5x5 middlegame", "-BBB-/-W-W-/----B/-B---/BW-W-", PLAYER_BK),
+            new Position("5x5 endgame", "----B/----W/-----/WW--B/W----", PLAYER_BK),
+            new Position("6x6 opening", "-BBBB-/W----W/W----W/W----W/W----W/-BBBB-", PLAYER_BK),
+            new Position("6x6 middlegame", "-B--B-/----B-/B-----/W-W-B-/W-W--W/----W-", PLAYER_BK),
+            new Position("6x6 endgame", "B-WB--/W-WW--/W-----/WB----/W-----/W---B-", PLAYER_BK),
+    };
+
+    private static final MoveDirection[] DIRECTIONS = {MoveDirection.UP, MoveDirection.DOWN, MoveDirection.LEFT, MoveDirection.RIGHT,
+            MoveDirection.UP_MAINDIAGONAL, MoveDirection.DOWN_MAINDIAGONAL, MoveDirection.UP_COUNTERDIAGONAL, MoveDirection.DOWN_COUNTERDIAGONAL};
+
+    private static class Position {     //A committed position and the player to move in it.
+        final String name;
+        final String text;
+        final PlayerColor toMove;
+
+        Position(String name, String text, PlayerColor toMove){
+            this.name = name;
+            this.text = text;
+            this.toMove = toMove;
+        }
+    }
+
+    private static class Case {     //A position prepared for the benchmarks, with everything they need computed beforehand.
+        final String name;
+        final ChessBoard board;
+        final PlayerColor player;
+        final AI ai;
+        final List<Move> moves = new ArrayList<>();     //All the valid moves of the player.
+        final List<Move> quietMoves = new ArrayList<>();    //The valid moves capturing nothing, so they can be made backwards.
+        final List<BoardLocation> locations;    //Locations of the player's checkers.
+        final int[] packedMoves = new int[AI.MAX_MOVES];
+        final int packedMoveNum;
+
+        Case(Position position, int depth, SearchOptions options, int evaluationCacheSize){
+            name = position.name;
+            board = ChessBoard.parse(position.text);
+            player = position.toMove;
+            ai = new AI(3, player == PLAYER_BK ? PLAYER_WH : PLAYER_BK, player);
+            ai.setDepthLimit(depth);
+            ai.setTimeLimit(Long.MAX_VALUE / 2);
+            ai.setVerbose(false);
+            ai.setMetricsEnabled(false);
+            ai.setSolverNodeLimit(0);   //No shortcut before the search, so the search bench always times the alpha-beta search.
+            ai.setTablebase(null);
+            ai.setOpeningBook(null);
+            ai.getSearchOptions().setNullMove(options.isNullMove());
+            ai.getSearchOptions().setLateMoveReductions(options.isLateMoveReductions());
+            ai.getSearchOptions().setPrincipalVariation(options.isPrincipalVariation());
+            ai.getSearchOptions().setAspiration(options.isAspiration());
+            ai.setEvaluationCacheSize(evaluationCacheSize);
+            packedMoveNum = board.generateMoves(player, packedMoves);
+            for (int i = 0; i < packedMoveNum; i++){
+                Move move = PackedMove.toMove(packedMoves[i], board.geometry);
+                moves.add(move);
+                if (!PackedMove.isCapture(packedMoves[i])){
+                    quietMoves.add(move);
+                }
+            }
+            locations = board.getCheckerLocations(ai.getCheckerColor(player));
+        }
+    }
+
+    private interface Operation {   //One operation of a benchmark. The result is kept so the work can't be optimized away.
+        long run(Case c);
+    }
+
+    private static class Bench {
+        final String name;
+        final Operation operation;
+
+        Bench(String name, Operation operation){
+            this.name = name;
+            this.operation = operation;
+        }
+    }
+
+    private long warmupTime = 500;  //Warm up time of each benchmark in ms.
+    private long measureTime = 1000;    //Measured time of each benchmark in ms.
+    private int depth = 3;  //Depth of the fixed depth search.
+    private String filter = "";
+    private final SearchOptions options = new SearchOptions();  //Switches of the search, the other parameters keep their defaults.
+    private int evaluationCacheSize = EvaluationCache.DEFAULT_SIZE;
+    private long sink;  //Collects the results of the operations.
+
+    public static void main(String[] args){
+        Benchmark benchmark = new Benchmark();
+        for (int i = 0; i + 1 < args.length; i += 2){
+            String value = args[i + 1];
+            switch (args[i]){
+                case "-warmup":
+                    benchmark.warmupTime = Long.parseLong(value);
+                    break;
+                case "-time":
+                    benchmark.measureTime = Long.parseLong(value);
+                    break;
+                case "-depth":
+                    benchmark.depth = Integer.parseInt(value);
+                    break;
+                case "-filter":
+                    benchmark.filter = value;
+                    break;
+                case "-nullmove":
+                    benchmark.options.setNullMove(parseSwitch(value));
+                    break;
+                case "-lmr":
+                    benchmark.options.setLateMoveReductions(parseSwitch(value));
+                    break;
+                case "-pvs":
+                    benchmark.options.setPrincipalVariation(parseSwitch(value));
+                    break;
+                case "-aspiration":
+                    benchmark.options.setAspiration(parseSwitch(value));
+                    break;
+                case "-evalcache":
+                    benchmark.evaluationCacheSize = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        benchmark.run();
+    }
+
+    private static boolean parseSwitch(String value){
+        if (!value.equals("on") && !value.equals("off")){
+            throw new IllegalArgumentException("Expected on or off instead of " + value);
+        }
+        return value.equals("on");
+    }
+
+    private List<Bench> benches(){
+        List<Bench> benches = new ArrayList<>();
+        benches.add(new Bench("copy", c -> new ChessBoard(c.board).zobristKey));
+        benches.add(new Bench("moveCheck", c -> {   //Check every valid move of the player.
+            long valid = 0;
+            for (Move move: c.moves){
+                if (c.board.moveCheck(move, c.player)){
+                    valid++;
+                }
+            }
+            return valid;
+        }));
+        benches.add(new Bench("moveCount", c -> {   //Count the steps of every checker of the player in every direction.
+            long steps = 0;
+            for (BoardLocation location: c.locations){
+                for (MoveDirection direction: DIRECTIONS){
+                    steps += c.board.moveCount(location, direction);
+                }
+            }
+            return steps;
+        }));
+        benches.add(new Bench("makeMove", c -> {    //Make every quiet move and make it backwards again.
+            for (Move move: c.quietMoves){
+                c.board.makeMove(move, c.player);
+                c.board.makeMove(new Move(move.getTo(), move.getFrom()), c.player);
+            }
+            return c.board.zobristKey;
+        }));
+        benches.add(new Bench("applyMove/undoMove", c -> {  //Make and take back every valid move, the way the search does.
+            long keys = 0;
+            for (int i = 0; i < c.packedMoveNum; i++){
+                c.board.applyMove(c.packedMoves[i], c.player);
+                keys += c.board.zobristKey;
+                c.board.undoMove();
+            }
+            return keys;
+        }));
+        benches.add(new Bench("generateMoves", c -> c.board.generateMoves(c.player, c.packedMoves)));
+        benches.add(new Bench("continuousCheck", c ->
+                (c.board.continuousCheck(PLAYER_BK) ? 1 : 0) + (c.board.continuousCheck(PLAYER_WH) ? 2 : 0)));
+        benches.add(new Bench("getCheckerLocations", c ->
+                c.board.getCheckerLocations(BLACK).size() + c.board.getCheckerLocations(WHITE).size()));
+        benches.add(new Bench("evaluationFunc", c -> Float.floatToIntBits(c.ai.evaluationFunc(c.board))));
+        benches.add(new Bench("alphaBetaSearch depth " + depth, c -> {  //A search from scratch, without anything learnt before.
+            c.ai.newGame();
+            c.ai.aiInitialize();
+            Move move = c.ai.alphaBetaSearch(c.board);
+            return move.getTo().getRow() * 8 + move.getTo().getColumn() + c.ai.getNodeNum();
+        }));
+        return benches;
+    }
+
+    public void run(){
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        boolean allocation = threadBean.isThreadAllocatedMemorySupported();
+        if (allocation){
+            threadBean.setThreadAllocatedMemoryEnabled(true);
+        }
+        long threadId = Thread.currentThread().getId();
+        List<Case> cases = new ArrayList<>();
+        for (Position position: POSITIONS){
+            cases.add(new Case(position, depth, options, evaluationCacheSize));
+        }
+        System.out.printf("Warm up %d ms, measure %d ms per benchmark.%n", warmupTime, measureTime);
+        System.out.printf("%-24s %-16s %14s %12s%n", "Benchmark", "Position", "ns/op", "B/op");
+        for (Bench bench: benches()){
+            if (!bench.name.contains(filter)){
+                continue;
+            }
+            for (Case c: cases){
+                measure(bench.operation, c, warmupTime);
+                long bytes = allocation ? threadBean.getThreadAllocatedBytes(threadId) : 0;
+                long start = System.nanoTime();
+                long opNum = measure(bench.operation, c, measureTime);
+                long elapsed = System.nanoTime() - start;
+                bytes = allocation ? threadBean.getThreadAllocatedBytes(threadId) - bytes : -1;
+                System.out.printf("%-24s %-16s %14.1f %12s%n", bench.name, c.name, (double) elapsed / opNum,
+                        allocation ? String.format("%.1f", (double) bytes / opNum) : "n/a");
+            }
+        }
+        if (sink == 42){    //Never true in practice, only keeps the sink alive.
+            System.out.println();
+        }
+    }
+
+    private long measure(Operation operation, Case c, long duration){
+        /*
+        Run the operation in batches until the duration in ms has passed, and return the number of operations run.
+        The batch grows while the operation is fast, so reading the clock costs little next to the operation.
+         */
+        long now = System.nanoTime();
+        long end = now + duration * 1000000;
+        long opNum = 0;
+        int batch = 1;
+        long result = 0;
+        do {
+            long batchStart = now;
+            for (int i = 0; i < batch; i++){
+                result += operation.run(c);
+            }
+            opNum += batch;
+            now = System.nanoTime();
+            if (now - batchStart < 1000000 && batch < 1 << 20){     //Grow the batch until it takes a millisecond.
+                batch <<= 1;
+            }
+        } while (now < end);
+        sink += result;
+        return opNum;
+    }
+}
@@ -0,0 +1,164 @@
+package main;
+
+/**
+ * Precomputed bit masks of a board size. Square (r,c) is stored in bit r*boardSize+c of a long.
+ * One instance per board size is shared by all the boards of that size.
+ */
+public final class BoardGeometry {
+    private static final int[] RAY_ROW_STEPS = {-1, 1, 0, 0, -1, 1, -1, 1};    //Steps of the ray directions, set before the geometries are built.
+    private static final int[] RAY_COLUMN_STEPS = {0, 0, -1, 1, -1, 1, 1, -1};
+    private static final BoardGeometry GEOMETRY_5 = new BoardGeometry(5);
+    private static final BoardGeometry GEOMETRY_6 = new BoardGeometry(6);
+
+    public final int boardSize;
+    public final int squareNum;    // # of squares on the board
+    public final long boardMask;   // All the squares of the board
+    public final long[] rowMasks;  // Squares of each row
+    public final long[] columnMasks;   // Squares of each column
+    public final long[] mainDiagonalMasks;     // Squares of each down-diagonal "\", indexed by (boardSize-1-row)+column
+    public final long[] counterDiagonalMasks;  // Squares of each up-diagonal "/", indexed by row+column
+    public final long notFirstColumn;  // All the squares except column 0, masks out the wrap-around of shifts to the right
+    public final long notLastColumn;   // All the squares except the last column, masks out the wrap-around of shifts to the left
+    public final int[] squareRow;      // Row of each square
+    public final int[] squareColumn;   // Column of each square
+    public final long[] blackKeys;     // Zobrist key of a black checker on each square
+    public final long[] whiteKeys;     // Zobrist key of a white checker on each square
+    public final long whiteToMoveKey;  // Zobrist key xor-ed in when white is the side to move
+    private final long[] between;   // Squares strictly between two squares on the same line, indexed by from*squareNum+to
+    /*
+    Ray table of the move generator. A move goes from a square in one of the 8 directions as far as the checkers on its
+    line, between 1 and boardSize. For each square, direction and distance, indexed by rayIndex, a ray keeps the squares
+    passed over in the low bits and the destination plus one from bit 56 on, in a single long so the generator does one
+    load per move. A ray of 0 leaves the board.
+     */
+    public static final int UP = 0, DOWN = 1, LEFT = 2, RIGHT = 3, UP_MAIN_DIAGONAL = 4, DOWN_MAIN_DIAGONAL = 5,
+            UP_COUNTER_DIAGONAL = 6, DOWN_COUNTER_DIAGONAL = 7;     //Directions of the rays, in the order of MoveDirection.
+    private final long[] rays;
+
+    private BoardGeometry(int boardSize){
+        this.boardSize = boardSize;
+        this.squareNum = boardSize * boardSize;
+        this.boardMask = squareNum == 64 ? -1L : (1L << squareNum) - 1;
+        this.rowMasks = new long[boardSize];
+        this.columnMasks = new long[boardSize];
+        this.mainDiagonalMasks = new long[boardSize*2-1];
+        this.counterDiagonalMasks = new long[boardSize*2-1];
+        this.squareRow = new int[squareNum];
+        this.squareColumn = new int[squareNum];
+        this.between = new long[squareNum * squareNum];
+        this.blackKeys = new long[squareNum];
+        this.whiteKeys = new long[squareNum];
+        long seed = 0x4C4F41L * boardSize;  //Fixed seed, so keys are the same in every run and can be stored in files.
+        for (int square = 0; square < squareNum; square++){
+            seed += 0x9E3779B97F4A7C15L;
+            blackKeys[square] = mix(seed);
+            seed += 0x9E3779B97F4A7C15L;
+            whiteKeys[square] = mix(seed);
+        }
+        seed += 0x9E3779B97F4A7C15L;
+        this.whiteToMoveKey = mix(seed);
+        for (int row = 0; row < boardSize; row++){
+            for (int column = 0; column < boardSize; column++){
+                int square = row * boardSize + column;
+                long bit = 1L << square;
+                squareRow[square] = row;
+                squareColumn[square] = column;
+                rowMasks[row] |= bit;
+                columnMasks[column] |= bit;
+                mainDiagonalMasks[(boardSize-1-row) + column] |= bit;
+                counterDiagonalMasks[row + column] |= bit;
+            }
+        }
+        this.notFirstColumn = boardMask & ~columnMasks[0];
+        this.notLastColumn = boardMask & ~columnMasks[boardSize-1];
+        for (int from = 0; from < squareNum; from++){
+            for (int to = 0; to < squareNum; to++){
+                int dRow = squareRow[to] - squareRow[from];
+                int dColumn = squareColumn[to] - squareColumn[from];
+                if (from == to || (dRow != 0 && dColumn != 0 && Math.abs(dRow) != Math.abs(dColumn))){
+                    continue;   //Not on the same line.
+                }
+                int stepRow = Integer.signum(dRow);
+                int stepColumn = Integer.signum(dColumn);
+                int row = squareRow[from] + stepRow;
+                int column = squareColumn[from] + stepColumn;
+                long path = 0;
+                while (row != squareRow[to] || column != squareColumn[to]){
+                    path |= 1L << square(row, column);
+                    row += stepRow;
+                    column += stepColumn;
+                }
+                between[from * squareNum + to] = path;
+            }
+        }
+        this.rays = new long[squareNum * 8 * (boardSize + 1)];
+        for (int from = 0; from < squareNum; from++){
+            for (int direction = 0; direction < 8; direction++){
+                for (int distance = 0; distance <= boardSize; distance++){
+                    int row = squareRow[from] + RAY_ROW_STEPS[direction] * distance;
+                    int column = squareColumn[from] + RAY_COLUMN_STEPS[direction] * distance;
+                    if (distance == 0 || row < 0 || row >= boardSize || column < 0 || column >= boardSize){
+                        continue;
+                    }
+                    int to = square(row, column);
+                    rays[rayIndex(from, direction, distance)] = (long) (to + 1) << 56 | between[from * squareNum + to];
+                }
+            }
+        }
+    }
+
+    private static long mix(long z){    //SplitMix64 finalizer, turns a counter into a well spread random key.
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public static BoardGeometry forSize(int boardSize){     //Return the shared geometry of the given board size.
+        if (boardSize == 5){
+            return GEOMETRY_5;
+        }else if (boardSize == 6){
+            return GEOMETRY_6;
+        }else{
+            throw new IllegalArgumentException("Illegal board size!");
+        }
+    }
+
+    public int square(int row, int column){     //Convert a row and column into a square index.
+        return row * boardSize + column;
+    }
+
+    public int mainDiagonalOf(int square){  //Index of the "\" diagonal the square belongs to.
+        return (boardSize-1-squareRow[square]) + squareColumn[square];
+    }
+
+    public int counterDiagonalOf(int square){   //Index of the "/" diagonal the square belongs to.
+        return squareRow[square] + squareColumn[square];
+    }
+
+    public long neighbourMask(long mask){   //All the squares adjacent to the given squares in the 8 directions, including the squares themselves.
+        int n = boardSize;
+        long toRight = (mask << 1 | mask << (n+1) | mask >>> (n-1)) & notFirstColumn;    //Column + 1. Bits shifted out of the last column land in column 0.
+        long toLeft = (mask >>> 1 | mask >>> (n+1) | mask << (n-1)) & notLastColumn;     //Column - 1. Bits shifted out of column 0 land in the last column.
+        return (mask | mask << n | mask >>> n | toRight | toLeft) & boardMask;
+    }
+
+    public int rayIndex(int square, int direction, int distance){   //Index of a ray in the ray tables.
+        return (square * 8 + direction) * (boardSize + 1) + distance;
+    }
+
+    public long ray(int index){     //The ray at an index of the ray table, 0 if it leaves the board.
+        return rays[index];
+    }
+
+    public static int rayTarget(long ray){  //Destination square of a ray.
+        return (int) (ray >>> 56) - 1;
+    }
+
+    public long rayPath(long ray){  //Squares passed over by a ray, without its start and destination.
+        return ray & boardMask;
+    }
+
+    public long betweenMask(int from, int to){  //Squares strictly between from and to. 0 if they are adjacent or not on a line.
+        return between[from * squareNum + to];
+    }
+}
@@ -0,0 +1,53 @@
+package main;
+
+/**
+ * The distance between a checker and the center of mass(COM) used by the evaluation function, one per difficulty.
+ * Each constant sums the distances of all the checkers in its own loop, so the choice is made once and not per checker.
+ */
+public enum CenterDistance {
+    MIN_DISTANCE {  //In the easy mode, sum up the smaller difference value of row and column to COM.
+        @Override
+        public float sumDistances(long checkers, BoardGeometry geometry, float aveR, float aveC){
+            float sum = 0;
+            for (long mask = checkers; mask != 0; mask &= mask - 1){
+                int square = Long.numberOfTrailingZeros(mask);
+                sum += Math.min(Math.abs(aveR - geometry.squareRow[square]), Math.abs(aveC - geometry.squareColumn[square]));
+            }
+            return sum;
+        }
+    },
+    MAX_DISTANCE {  //In the medium mode, sum up the larger difference value of row and column to COM.
+        @Override
+        public float sumDistances(long checkers, BoardGeometry geometry, float aveR, float aveC){
+            float sum = 0;
+            for (long mask = checkers; mask != 0; mask &= mask - 1){
+                int square = Long.numberOfTrailingZeros(mask);
+                sum += Math.max(Math.abs(aveR - geometry.squareRow[square]), Math.abs(aveC - geometry.squareColumn[square]));
+            }
+            return sum;
+        }
+    },
+    SUM_DISTANCE {  //In the hard mode, sum up the both difference value of row and column to COM.
+        @Override
+        public float sumDistances(long checkers, BoardGeometry geometry, float aveR, float aveC){
+            float sum = 0;
+            for (long mask = checkers; mask != 0; mask &= mask - 1){
+                int square = Long.numberOfTrailingZeros(mask);
+                sum += Math.abs(aveR - geometry.squareRow[square]) + Math.abs(aveC - geometry.squareColumn[square]);
+            }
+            return sum;
+        }
+    };
+
+    public abstract float sumDistances(long checkers, BoardGeometry geometry, float aveR, float aveC);  //Sum of the distances of the given checkers to the COM (aveR, aveC).
+
+    public static CenterDistance forDifficulty(int difficulty){
+        if (difficulty == 1){
+            return MIN_DISTANCE;
+        }else if (difficulty == 2){
+            return MAX_DISTANCE;
+        }else{
+            return SUM_DISTANCE;
+        }
+    }
+}
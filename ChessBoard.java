@@ -1,8 +1,7 @@
 package main;
 
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Arrays;
 
 import static main.Checker.*;
 import static main.MoveDirection.*;
@@ -14,11 +13,28 @@ import static main.PlayerColor.*;
 public class ChessBoard {
 
     public final int boardSize;
-    public Checker[][] checkers;   //The contents of board
+    public final BoardGeometry geometry;   //Precomputed masks of the board size.
+    public long blackCheckers;     //Bit mask of the squares occupied by black checkers.
+    public long whiteCheckers;     //Bit mask of the squares occupied by white checkers.
+    public long zobristKey;        //Zobrist hash of the checkers on the board, updated with every move.
+    private int blackCheckerNum, whiteCheckerNum;   //# of checkers of each color
+    private int blackRowSum, whiteRowSum;   //Sum of the rows of the checkers of each color, for the center of mass.
+    private int blackColumnSum, whiteColumnSum;     //Sum of the columns of the checkers of each color, for the center of mass.
     public int[] checkerNumInRow;  // # of checkers in each row
     public int[] checkerNumInColumn;   // # of checkers in each column
     public int[] checkerNumInCounterDiagonal = new int[9];  // # of checkers in each up-diagonal "/"
     public int[] checkerNumInMainDiagonal = new int[9];    //# of checkers in each down-diagonal "\"
+    /*
+    Undo records of the moves made by applyMove, used as a stack by undoMove.
+    Each record keeps the squares of the move, the color who moved, whether it captured, and the key before the move.
+    The line counts are not saved, undoMove takes their deltas back.
+     */
+    private int undoNum = 0;
+    private int[] undoFrom = new int[16];
+    private int[] undoTo = new int[16];
+    private boolean[] undoBlackMoved = new boolean[16];
+    private boolean[] undoCaptured = new boolean[16];
+    private long[] undoKey = new long[16];
 
     private static final Checker[][] INITIALCHESSBOARD_5 = {    //The initial status of a 5*5 chess board.
             {EMPTY, BLACK, BLACK, BLACK, EMPTY},
@@ -39,15 +55,16 @@ public class ChessBoard {
 
     public ChessBoard(int boardSize){   //Construction function of Chessboard, need acquire the board size firstly.
         this.boardSize = boardSize;
+        this.geometry = BoardGeometry.forSize(boardSize);
         if (boardSize == 5){
-            this.checkers = INITIALCHESSBOARD_5;
+            loadCheckers(INITIALCHESSBOARD_5);
             this.checkerNumInColumn = new int[]{3,2,2,2,3};
             this.checkerNumInRow = new int[]{3,2,2,2,3};
             this.checkerNumInMainDiagonal = new int[]{0,2,2,2,0,2,2,2,0};
             this.checkerNumInCounterDiagonal = new int[]{0,2,2,2,0,2,2,2,0};
         }
         else{
-            this.checkers = INITIALCHESSBOARD_6;
+            loadCheckers(INITIALCHESSBOARD_6);
             this.checkerNumInColumn = new int[]{4,2,2,2,2,4};
             this.checkerNumInRow = new int[]{4,2,2,2,2,4};
             this.checkerNumInMainDiagonal = new int[]{0,2,2,2,2,0,2,2,2,2,0};
@@ -60,15 +77,21 @@ public class ChessBoard {
 
     public ChessBoard(ChessBoard board){    // Board copy constructor
         this.boardSize = board.boardSize;
-        this.checkers = new Checker[boardSize][boardSize];
+        this.geometry = board.geometry;
+        this.blackCheckers = board.blackCheckers;
+        this.whiteCheckers = board.whiteCheckers;
+        this.zobristKey = board.zobristKey;
+        this.blackCheckerNum = board.blackCheckerNum;
+        this.whiteCheckerNum = board.whiteCheckerNum;
+        this.blackRowSum = board.blackRowSum;
+        this.whiteRowSum = board.whiteRowSum;
+        this.blackColumnSum = board.blackColumnSum;
+        this.whiteColumnSum = board.whiteColumnSum;
         this.checkerNumInRow = new int[boardSize];
         this.checkerNumInColumn = new int[boardSize];
         this.checkerNumInMainDiagonal = new int[boardSize*2-1];
         this.checkerNumInCounterDiagonal = new int[boardSize*2-1];
         for (int i = 0; i < boardSize; i++){
-            for (int j = 0; j < boardSize; j++){
-                this.checkers[i][j] = board.checkers[i][j];
-            }
             this.checkerNumInRow[i] = board.checkerNumInRow[i];
             this.checkerNumInColumn[i] = board.checkerNumInColumn[i];
             this.checkerNumInMainDiagonal[i] = board.checkerNumInMainDiagonal[i];
@@ -78,13 +101,173 @@ public class ChessBoard {
         }
     }
 
+    public ChessBoard(int boardSize, long blackCheckers, long whiteCheckers){    //Build a board from the bit masks of both colors.
+        this.boardSize = boardSize;
+        this.geometry = BoardGeometry.forSize(boardSize);
+        this.checkerNumInRow = new int[boardSize];
+        this.checkerNumInColumn = new int[boardSize];
+        this.checkerNumInMainDiagonal = new int[boardSize*2-1];
+        this.checkerNumInCounterDiagonal = new int[boardSize*2-1];
+        setCheckers(blackCheckers, whiteCheckers);
+    }
+
+    public void setCheckers(long blackCheckers, long whiteCheckers){
+        //Put the board into the position of the given masks, recounting everything and forgetting the moves to undo.
+        this.blackCheckers = blackCheckers & geometry.boardMask;
+        this.whiteCheckers = whiteCheckers & geometry.boardMask & ~blackCheckers;
+        undoNum = 0;
+        for (int i = 0; i < boardSize; i++){
+            checkerNumInRowUpdate(i);
+            checkerNumInColumnUpdate(i);
+        }
+        long occupied = this.blackCheckers | this.whiteCheckers;
+        for (int i = 0; i < boardSize*2-1; i++){
+            checkerNumInMainDiagonal[i] = Long.bitCount(occupied & geometry.mainDiagonalMasks[i]);
+            checkerNumInCounterDiagonal[i] = Long.bitCount(occupied & geometry.counterDiagonalMasks[i]);
+        }
+        zobristKey = computeZobristKey();
+        centerSumsUpdate();
+    }
+
+    public static ChessBoard parse(String position){
+        /*
+        Build a board from its text form: the rows from top to bottom separated by '/', with 'B' for black,
+        'W' for white and '-' for an empty square. For example the initial 5*5 board is -BBB-/W---W/W---W/W---W/-BBB-
+         */
+        String[] rows = position.trim().split("/");
+        int size = rows.length;
+        if (size != 5 && size != 6){
+            throw new IllegalArgumentException("Illegal board size in position: " + position);
+        }
+        long black = 0;
+        long white = 0;
+        for (int i = 0; i < size; i++){
+            if (rows[i].length() != size){
+                throw new IllegalArgumentException("Illegal row in position: " + position);
+            }
+            for (int j = 0; j < size; j++){
+                long bit = 1L << (i * size + j);
+                char c = rows[i].charAt(j);
+                if (c == 'B'){
+                    black |= bit;
+                }else if (c == 'W'){
+                    white |= bit;
+                }else if (c != '-'){
+                    throw new IllegalArgumentException("Illegal checker '" + c + "' in position: " + position);
+                }
+            }
+        }
+        return new ChessBoard(size, black, white);
+    }
+
+    public String toPositionString(){   //The text form read by parse.
+        StringBuilder position = new StringBuilder();
+        for (int i = 0; i < boardSize; i++){
+            if (i > 0){
+                position.append('/');
+            }
+            for (int j = 0; j < boardSize; j++){
+                Checker checker = getChecker(geometry.square(i, j));
+                position.append(checker == BLACK ? 'B' : checker == WHITE ? 'W' : '-');
+            }
+        }
+        return position.toString();
+    }
+
+    private void loadCheckers(Checker[][] checkers){     //Build the bit masks from a checker array.
+        for (int i = 0; i < boardSize; i++){
+            for (int j = 0; j < boardSize; j++){
+                long bit = 1L << geometry.square(i, j);
+                if (checkers[i][j] == BLACK){
+                    blackCheckers |= bit;
+                }else if (checkers[i][j] == WHITE){
+                    whiteCheckers |= bit;
+                }
+            }
+        }
+        zobristKey = computeZobristKey();
+        centerSumsUpdate();
+    }
+
+    private void centerSumsUpdate(){    //Recount the checker numbers and the row and column sums of both colors from scratch.
+        blackCheckerNum = Long.bitCount(blackCheckers);
+        whiteCheckerNum = Long.bitCount(whiteCheckers);
+        blackRowSum = 0;
+        blackColumnSum = 0;
+        whiteRowSum = 0;
+        whiteColumnSum = 0;
+        for (long mask = blackCheckers; mask != 0; mask &= mask - 1){
+            int square = Long.numberOfTrailingZeros(mask);
+            blackRowSum += geometry.squareRow[square];
+            blackColumnSum += geometry.squareColumn[square];
+        }
+        for (long mask = whiteCheckers; mask != 0; mask &= mask - 1){
+            int square = Long.numberOfTrailingZeros(mask);
+            whiteRowSum += geometry.squareRow[square];
+            whiteColumnSum += geometry.squareColumn[square];
+        }
+    }
+
+    public int getCheckerNum(PlayerColor playerColor){  //# of checkers of the player.
+        return playerColor == PLAYER_BK ? blackCheckerNum : whiteCheckerNum;
+    }
+
+    public int getRowSum(PlayerColor playerColor){  //Sum of the rows of the player's checkers.
+        return playerColor == PLAYER_BK ? blackRowSum : whiteRowSum;
+    }
+
+    public int getColumnSum(PlayerColor playerColor){   //Sum of the columns of the player's checkers.
+        return playerColor == PLAYER_BK ? blackColumnSum : whiteColumnSum;
+    }
+
+    public long computeZobristKey(){    //Compute the Zobrist hash of the board from scratch.
+        long key = 0;
+        for (long mask = blackCheckers; mask != 0; mask &= mask - 1){
+            key ^= geometry.blackKeys[Long.numberOfTrailingZeros(mask)];
+        }
+        for (long mask = whiteCheckers; mask != 0; mask &= mask - 1){
+            key ^= geometry.whiteKeys[Long.numberOfTrailingZeros(mask)];
+        }
+        return key;
+    }
+
+    public long positionKey(PlayerColor playerToMove){  //Hash of the position including the side to move.
+        return playerToMove == PLAYER_WH ? zobristKey ^ geometry.whiteToMoveKey : zobristKey;
+    }
+
+    public long getCheckerMask(Checker checker){    //Return the bit mask of the given checker color.
+        if (checker == BLACK){
+            return blackCheckers;
+        }else if (checker == WHITE){
+            return whiteCheckers;
+        }else{
+            return geometry.boardMask & ~(blackCheckers | whiteCheckers);
+        }
+    }
+
+    public long getPlayerMask(PlayerColor playerColor){     //Return the bit mask of the given player's checkers.
+        return playerColor == PLAYER_BK ? blackCheckers : whiteCheckers;
+    }
+
+    public Checker getChecker(int square){  //Return the checker of a square index.
+        long bit = 1L << square;
+        if ((blackCheckers & bit) != 0){
+            return BLACK;
+        }else if ((whiteCheckers & bit) != 0){
+            return WHITE;
+        }else{
+            return EMPTY;
+        }
+    }
+
     public void chessBoardDisplay(){    //Display the board on terminal.
-        for (Checker[] line : checkers){
+        for (int i = 0; i < boardSize; i++){
             System.out.printf("|");
-            for (Checker checker : line){
-                if (checker.equals(EMPTY)){
+            for (int j = 0; j < boardSize; j++){
+                Checker checker = getChecker(geometry.square(i, j));
+                if (checker == EMPTY){
                     System.out.printf(" - |");
-                }else if(checker.equals(BLACK)){
+                }else if(checker == BLACK){
                     System.out.printf(" B |");
                 }else{
                     System.out.printf(" W |");
@@ -117,14 +300,23 @@ public class ChessBoard {
         int row = location.getRow();
         int column = location.getColumn();
         if (inputRCnumCheck(row) && inputRCnumCheck(column)){
-            return checkers[row][column];
+            return getChecker(geometry.square(row, column));
         }else{
             throw new IllegalArgumentException("Illegal location!");
         }
     }
 
     public void setChecker(BoardLocation location, Checker checkerToBeSet){     //Set the given location of chess board to the given checker.
-        this.checkers[location.getRow()][location.getColumn()] = checkerToBeSet;
+        long bit = 1L << geometry.square(location.getRow(), location.getColumn());
+        this.blackCheckers &= ~bit;
+        this.whiteCheckers &= ~bit;
+        if (checkerToBeSet == BLACK){
+            this.blackCheckers |= bit;
+        }else if (checkerToBeSet == WHITE){
+            this.whiteCheckers |= bit;
+        }
+        this.zobristKey = computeZobristKey();
+        centerSumsUpdate();
     }
 
     /*
@@ -166,18 +358,11 @@ public class ChessBoard {
     }
 
     public boolean fromCheckerValidityCheck(BoardLocation fromLocation, PlayerColor playerColor){   //Check whether the checker human picked is the right color.
-        if (playerColor.equals(PLAYER_WH)){
-            if (!this.getChecker(fromLocation).equals(WHITE)){
-                return false;
-            }
-        }else if (playerColor.equals(PLAYER_BK)){
-            if (!this.getChecker(fromLocation).equals(BLACK)){
-                return false;
-            }
-        }else{
+        if (!locationCheck(fromLocation)){
             return false;
         }
-       return true;
+        long bit = 1L << geometry.square(fromLocation.getRow(), fromLocation.getColumn());
+        return (getPlayerMask(playerColor) & bit) != 0;
     }
 
     public boolean moveLocationCheck(Move move){    //Check whether the start location and destination are on the board.
@@ -246,261 +431,255 @@ public class ChessBoard {
 
     public boolean moveBlockCheck(Move move, MoveDirection direction, PlayerColor playerColor){
         //check if the move been blocked by opponent checker in the path or by friendly checker on destination.
-        Checker checkerOpponent;
-        Checker checkerSelf;
-        if (playerColor.equals(PLAYER_BK)){
-            checkerSelf = BLACK;
-            checkerOpponent = WHITE;
-        }else if (playerColor.equals(PLAYER_WH)){
-            checkerSelf = WHITE;
-            checkerOpponent = BLACK;
-        }else{
-            return false;
-        }
+        long self = getPlayerMask(playerColor);
+        long opponent = playerColor == PLAYER_BK ? whiteCheckers : blackCheckers;
         BoardLocation from = move.getFrom();
-        int moveCount = moveCount(from, direction);
-        int fromRow = from.getRow();
-        int fromColumn = from.getColumn();
-        if (moveCount == 0){
+        BoardLocation to = move.getTo();
+        if (moveCount(from, direction) == 0){
             return true;
         }
-        if (direction.equals(UP)){
-            for (int i = 0; i <= moveCount - 1; i++){       //check opponent in the path, if so the path is blocked
-                if (checkers[fromRow - i][fromColumn].equals(checkerOpponent)){
-                    return false;
-                }
-            }
-            if (checkers[fromRow - moveCount][fromColumn].equals(checkerSelf)){ //check the destination. if the destination has a friendly checker, the path is blocked.
-                return false;
-            }
-        }else if (direction.equals(DOWN)){
-            for (int i = 0; i <= moveCount - 1; i++){
-                if (checkers[fromRow + i][fromColumn].equals(checkerOpponent)){
-                    return false;
-                }
-            }
-            if (checkers[fromRow + moveCount][fromColumn].equals(checkerSelf)){
-                return false;
-            }
-        }else if (direction.equals(LEFT)){
-            for (int i = 0; i <= moveCount-1; i++){
-                if (checkers[fromRow][fromColumn - i].equals(checkerOpponent)){
-                    return false;
-                }
-            }
-            if (checkers[fromRow][fromColumn - moveCount].equals(checkerSelf)){
-                return false;
-            }
-        }else if (direction.equals(RIGHT)){
-            for (int i = 0; i <= moveCount-1; i++){
-                if (checkers[fromRow][fromColumn + i].equals(checkerOpponent)){
-                    return false;
-                }
-            }
-            if (checkers[fromRow][fromColumn + moveCount].equals(checkerSelf)){
-                return false;
-            }
-        }else if (direction.equals(UP_MAINDIAGONAL)){
-            for (int i = 0; i <= moveCount-1; i++){
-                if (checkers[fromRow - i][fromColumn - i].equals(checkerOpponent)){
-                    return false;
-                }
-            }
-            if (checkers[fromRow - moveCount][fromColumn - moveCount].equals(checkerSelf)){
-                return false;
-            }
-        }else if (direction.equals(DOWN_MAINDIAGONAL)){
-            for (int i = 0; i <= moveCount-1; i++){
-                if (checkers[fromRow + i][fromColumn + i].equals(checkerOpponent)){
-                    return false;
-                }
-            }
-            if (checkers[fromRow + moveCount][fromColumn + moveCount].equals(checkerSelf)){
-                return false;
-            }
-        }else if (direction.equals(UP_COUNTERDIAGONAL)){
-            for (int i = 0; i <= moveCount-1; i++){
-                if (checkers[fromRow - i][fromColumn + i].equals(checkerOpponent)){
-                    return false;
-                }
-            }
-            if (checkers[fromRow - moveCount][fromColumn + moveCount].equals(checkerSelf)){
-                return false;
-            }
-        }else if (direction.equals(DOWN_COUNTERDIAGONAL)){
-            for (int i = 0; i <= moveCount-1; i++){
-                if (checkers[fromRow + i][fromColumn - i].equals(checkerOpponent)){
-                    return false;
-                }
-            }
-            if (checkers[fromRow + moveCount][fromColumn - moveCount].equals(checkerSelf)){
-                return false;
-            }
+        int fromSquare = geometry.square(from.getRow(), from.getColumn());
+        int toSquare = geometry.square(to.getRow(), to.getColumn());
+        if ((geometry.betweenMask(fromSquare, toSquare) & opponent) != 0){   //check opponent in the path, if so the path is blocked
+            return false;
         }
-        return true;
+        return (self & (1L << toSquare)) == 0;  //check the destination. if the destination has a friendly checker, the path is blocked.
     }
 
-    public void chessBoardUpdate(Move move){    //update the board's info of start location and destination. Including checker and valid move count in different direction.
-        changedLocationUpdate(move.getFrom());
-        changedLocationUpdate(move.getTo());
+    public void checkerNumInRowUpdate(int row){     //Update the count of checkers horizontally.
+        this.checkerNumInRow[row] = Long.bitCount((blackCheckers | whiteCheckers) & geometry.rowMasks[row]);
     }
 
-    public void changedLocationUpdate(BoardLocation location){  // Update the count of checkers in 4 path(-,|,/,\) of a location.
-        checkerNumInRowUpdate(location.getRow());
-        checkerNumInColumnUpdate(location.getColumn());
-        checkerNumInMainDiagonalUpdate(location);
-        checkerNumInCounterDiagonalUpdate(location);
+    public void checkerNumInColumnUpdate(int column){   //Update the count of checkers vertically.
+        this.checkerNumInColumn[column] = Long.bitCount((blackCheckers | whiteCheckers) & geometry.columnMasks[column]);
     }
 
-    public void checkerNumInRowUpdate(int row){     //Update the count of checkers horizontally.
-        int count = 0;
-        for (int i = 0; i < boardSize; i++){
-            if (this.checkers[row][i].equals(WHITE) || this.checkers[row][i].equals(BLACK)){
-                count++;
-            }
+    public boolean continuousCheck(PlayerColor playerColor){
+        /*
+        Check whether all the checkers are continuous. Used to decided whether the game is over or not.
+        Flood fill on the bit mask: start from one checker, and keep adding the friendly checkers next to the ones reached,
+        until nothing new is reached. The checkers are continuous if all of them were reached.
+         */
+        long checkers = getPlayerMask(playerColor);
+        if (checkers == 0){
+            return false;
         }
-        this.checkerNumInRow[row] = count;
+        long reached = checkers & -checkers;
+        long previous;
+        do {
+            previous = reached;
+            reached = geometry.neighbourMask(reached) & checkers;
+        } while (reached != previous);
+        return reached == checkers;
     }
 
-    public void checkerNumInColumnUpdate(int column){   //Update the count of checkers vertically.
-        int count = 0;
-        for (int i = 0; i < boardSize; i++){
-            if (this.checkers[i][column].equals(WHITE) || this.checkers[i][column].equals(BLACK)){
-                count++;
-            }
+    public int largestGroupSize(PlayerColor playerColor){   //Number of checkers in the player's largest group of continuous checkers, found by flood fill like continuousCheck.
+        long checkers = getPlayerMask(playerColor);
+        int largest = 0;
+        while (checkers != 0){
+            long reached = checkers & -checkers;
+            long previous;
+            do {
+                previous = reached;
+                reached = geometry.neighbourMask(reached) & checkers;
+            } while (reached != previous);
+            checkers &= ~reached;
+            largest = Math.max(largest, Long.bitCount(reached));
         }
-        this.checkerNumInColumn[column] = count;
+        return largest;
     }
 
-    public void checkerNumInMainDiagonalUpdate(BoardLocation location){     //Update the count of checkers in main diagonal.
-        int row = location.getRow();
-        int column = location.getColumn();
-        int rowUp = row;
-        int rowDown = row+ 1;
-        int columnUp = column;
-        int columnDown = column + 1;
-        int count = 0;
-        while (inputRCnumCheck(rowUp) && inputRCnumCheck(columnUp)){
-            if (this.checkers[rowUp][columnUp].equals(WHITE) || this.checkers[rowUp][columnUp].equals(BLACK)){
-                count++;
-            }
-            rowUp--;
-            columnUp--;
+    public ArrayList<BoardLocation> getCheckerLocations(Checker currentChecker){    // Return all the locations of checkers in the given color.
+        long mask = getCheckerMask(currentChecker);
+        ArrayList<BoardLocation> checkersLocation = new ArrayList<>(Long.bitCount(mask));
+        while (mask != 0){  //Go through the set bits from the lowest square, which is the same order as scanning row by row.
+            int square = Long.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            checkersLocation.add(new BoardLocation(geometry.squareRow[square], geometry.squareColumn[square]));
         }
-        while (inputRCnumCheck(rowDown) && inputRCnumCheck(columnDown)){
-            if (this.checkers[rowDown][columnDown].equals(WHITE) || this.checkers[rowDown][columnDown].equals(BLACK)){
-                count++;
-            }
-            rowDown++;
-            columnDown++;
+        return checkersLocation;
+    }
+
+    public void makeMove( Move move, PlayerColor player){ //Make a move and update the chessboard.
+
+        if (moveCheck(move,player)){
+            int from = squareOf(move.getFrom());
+            int to = squareOf(move.getTo());
+            boolean captured = ((blackCheckers | whiteCheckers) & (1L << to)) != 0;
+            moveCheckers(from, to, player);
+            lineCountsMoved(from, to, captured);
         }
-        this.checkerNumInMainDiagonal[(boardSize-1-row) + column] = count;
+    }
 
+    public void applyMove(Move move, PlayerColor player){   //Make a Move in place without checking it. See applyMove(int, PlayerColor).
+        applyMove(PackedMove.fromMove(move, this), player);
     }
 
-    public void checkerNumInCounterDiagonalUpdate(BoardLocation location){  //Update the count of checkers in counter diagonal.
-        int row = location.getRow();
-        int column = location.getColumn();
-        int rowUp = row;
-        int rowDown = row+ 1;
-        int columnUp = column;
-        int columnDown = column - 1;
-        int count = 0;
-        while (inputRCnumCheck(rowUp) && inputRCnumCheck(columnUp)){
-            if (this.checkers[rowUp][columnUp].equals(WHITE) || this.checkers[rowUp][columnUp].equals(BLACK)){
-                count++;
-            }
-            rowUp--;
-            columnUp++;
-        }
-        while (inputRCnumCheck(rowDown) && inputRCnumCheck(columnDown)){
-            if (this.checkers[rowDown][columnDown].equals(WHITE) || this.checkers[rowDown][columnDown].equals(BLACK)){
-                count++;
-            }
-            rowDown++;
-            columnDown--;
+    public void applyMove(int move, PlayerColor player){
+        /*
+        Make a packed move in place without checking it, and push an undo record so undoMove can take it back.
+        Used by the search, which only applies moves that already passed moveCheck or came from generateMoves.
+         */
+        int from = PackedMove.fromSquare(move);
+        int to = PackedMove.toSquare(move);
+        if (undoNum == undoFrom.length){    //Grow the undo stack, only happens when the search goes deeper than ever before.
+            int capacity = undoNum * 2;
+            undoFrom = Arrays.copyOf(undoFrom, capacity);
+            undoTo = Arrays.copyOf(undoTo, capacity);
+            undoBlackMoved = Arrays.copyOf(undoBlackMoved, capacity);
+            undoCaptured = Arrays.copyOf(undoCaptured, capacity);
+            undoKey = Arrays.copyOf(undoKey, capacity);
         }
-        this.checkerNumInCounterDiagonal[row + column] = count;
+        undoFrom[undoNum] = from;
+        undoTo[undoNum] = to;
+        undoBlackMoved[undoNum] = player == PLAYER_BK;
+        boolean captured = ((blackCheckers | whiteCheckers) & (1L << to)) != 0;
+        undoCaptured[undoNum] = captured;
+        undoKey[undoNum] = zobristKey;
+        undoNum++;
+        moveCheckers(from, to, player);
+        lineCountsMoved(from, to, captured);
     }
 
-    public boolean continuousCheck(PlayerColor playerColor){    //Check whether all the checkers are continuous. Used to decided whether the game is over or not.
-        Checker currentChecker;
-        ArrayList<BoardLocation> checkersLocations;
-        if (playerColor.equals(PLAYER_BK)){
-            currentChecker = BLACK;
-        }else if (playerColor.equals(PLAYER_WH)){
-            currentChecker = WHITE;
-        }else{
-            throw new IllegalArgumentException("Invalid player!");
+    public int generateMoves(PlayerColor player, int[] moves){
+        /*
+        Write all the valid moves of the player into the given buffer as packed moves and return how many there are.
+        The moves come in board scan order times the direction order UP,DOWN,LEFT,RIGHT,UP_MAINDIAGONAL,DOWN_MAINDIAGONAL,
+        UP_COUNTERDIAGONAL,DOWN_COUNTERDIAGONAL. No objects are created.
+        Only legal moves are written: the ray tables of the geometry give the destination of each direction for the count
+        of its line and the squares passed over, so each move is checked with two mask tests.
+         */
+        long self = getPlayerMask(player);
+        long opponent = player == PLAYER_BK ? whiteCheckers : blackCheckers;
+        int moveNum = 0;
+        for (long mask = self; mask != 0; mask &= mask - 1){
+            int from = Long.numberOfTrailingZeros(mask);
+            int columnCount = checkerNumInColumn[geometry.squareColumn[from]];
+            int rowCount = checkerNumInRow[geometry.squareRow[from]];
+            int mainDiagonalCount = checkerNumInMainDiagonal[geometry.mainDiagonalOf(from)];
+            int counterDiagonalCount = checkerNumInCounterDiagonal[geometry.counterDiagonalOf(from)];
+            int rays = geometry.rayIndex(from, 0, 0);   //The rays of a square are together, direction by direction.
+            int stride = boardSize + 1;
+            moveNum = addMove(moves, moveNum, from, rays + BoardGeometry.UP * stride + columnCount, self, opponent);
+            moveNum = addMove(moves, moveNum, from, rays + BoardGeometry.DOWN * stride + columnCount, self, opponent);
+            moveNum = addMove(moves, moveNum, from, rays + BoardGeometry.LEFT * stride + rowCount, self, opponent);
+            moveNum = addMove(moves, moveNum, from, rays + BoardGeometry.RIGHT * stride + rowCount, self, opponent);
+            moveNum = addMove(moves, moveNum, from, rays + BoardGeometry.UP_MAIN_DIAGONAL * stride + mainDiagonalCount, self, opponent);
+            moveNum = addMove(moves, moveNum, from, rays + BoardGeometry.DOWN_MAIN_DIAGONAL * stride + mainDiagonalCount, self, opponent);
+            moveNum = addMove(moves, moveNum, from, rays + BoardGeometry.UP_COUNTER_DIAGONAL * stride + counterDiagonalCount, self, opponent);
+            moveNum = addMove(moves, moveNum, from, rays + BoardGeometry.DOWN_COUNTER_DIAGONAL * stride + counterDiagonalCount, self, opponent);
         }
-        checkersLocations = this.getCheckerLocations(currentChecker);
-        return breadthSearchChecker(checkersLocations, currentChecker);
-
+        return moveNum;
     }
 
-    public ArrayList<BoardLocation> getCheckerLocations(Checker currentChecker){    // Return all the locations of checkers in the given color.
-        ArrayList<BoardLocation> checkersLocation = new ArrayList<>();
-        for (int i = 0; i < boardSize; i++){
-            for (int j = 0; j < boardSize; j++){
-                if (this.checkers[i][j].equals(currentChecker)){
-                    checkersLocation.add(new BoardLocation(i,j));
-                }
-            }
+    private int addMove(int[] moves, int moveNum, int from, int rayIndex, long self, long opponent){
+        //Add the move along the ray to the buffer if it stays on the board, does not land on a friendly checker and does not jump an opponent checker.
+        long ray = geometry.ray(rayIndex);
+        if (ray == 0){
+            return moveNum;
         }
-        return checkersLocation;
+        int to = BoardGeometry.rayTarget(ray);
+        long toBit = 1L << to;
+        if ((self & toBit) != 0 || (geometry.rayPath(ray) & opponent) != 0){
+            return moveNum;
+        }
+        moves[moveNum] = PackedMove.encode(from, to, (opponent & toBit) != 0);
+        return moveNum + 1;
     }
 
-    public boolean breadthSearchChecker(ArrayList<BoardLocation> checkersLocations, Checker checker){
-         /*
-        Use BFS to check the continuity of checkers.
-        For the given checker, check the location in 8 directions, if there are friendly checkers, add them into the queue.
-        When the queue is empty, see if the number of checkers discovered equals to the total number of checker.
-        If so, this color of checkers are continuous.
-        */
-        int checkerNum = checkersLocations.size();
-        LinkedList<BoardLocation> locationQueue = new LinkedList<>();
-        HashSet<BoardLocation> friendlyLocations = new HashSet<>();
-        locationQueue.addFirst(checkersLocations.get(0));
-        friendlyLocations.add(checkersLocations.get(0));
-        int checkerCount = 0;
-        while (!locationQueue.isEmpty()){
-            BoardLocation currentLocation = locationQueue.pollFirst();
-            checkerCount++;
-            int row = currentLocation.getRow();
-            int column = currentLocation.getColumn();
-            ArrayList<BoardLocation> surroundedLocation = new ArrayList<>();
-            surroundedLocation.add(new BoardLocation(row, column-1));
-            surroundedLocation.add(new BoardLocation(row, column+1));
-            surroundedLocation.add(new BoardLocation(row-1, column-1));
-            surroundedLocation.add(new BoardLocation(row+1, column-1));
-            surroundedLocation.add(new BoardLocation(row-1, column+1));
-            surroundedLocation.add(new BoardLocation(row+1, column+1));
-            surroundedLocation.add(new BoardLocation(row-1, column));
-            surroundedLocation.add(new BoardLocation(row+1, column));
-            for(BoardLocation location:surroundedLocation){
-                if(this.locationCheck(location)){
-                    if (this.getChecker(location).equals(checker) && !friendlyLocations.contains(location)){
-                        locationQueue.addLast(location);
-                        friendlyLocations.add(location);
-                    }
-                }
+    public void undoMove(){     //Take back the last move made by applyMove.
+        undoNum--;
+        int from = undoFrom[undoNum];
+        int to = undoTo[undoNum];
+        long fromBit = 1L << from;
+        long toBit = 1L << to;
+        int toRow = geometry.squareRow[to];
+        int toColumn = geometry.squareColumn[to];
+        int dRow = toRow - geometry.squareRow[from];
+        int dColumn = toColumn - geometry.squareColumn[from];
+        if (undoBlackMoved[undoNum]){
+            blackCheckers ^= fromBit | toBit;
+            blackRowSum -= dRow;
+            blackColumnSum -= dColumn;
+            if (undoCaptured[undoNum]){
+                whiteCheckers |= toBit;
+                whiteCheckerNum++;
+                whiteRowSum += toRow;
+                whiteColumnSum += toColumn;
             }
-        }
-        if (checkerNum == checkerCount){
-            return true;
         }else{
-            return false;
+            whiteCheckers ^= fromBit | toBit;
+            whiteRowSum -= dRow;
+            whiteColumnSum -= dColumn;
+            if (undoCaptured[undoNum]){
+                blackCheckers |= toBit;
+                blackCheckerNum++;
+                blackRowSum += toRow;
+                blackColumnSum += toColumn;
+            }
+        }
+        lineCountsAdd(from, 1);     //The same deltas as applyMove, reversed.
+        if (!undoCaptured[undoNum]){
+            lineCountsAdd(to, -1);
         }
+        zobristKey = undoKey[undoNum];
     }
 
-    public void makeMove( Move move, PlayerColor player){ //Make a move and update the chessboard.
+    private int squareOf(BoardLocation location){   //Square index of a location.
+        return geometry.square(location.getRow(), location.getColumn());
+    }
 
-        if (moveCheck(move,player)){
-            Checker temp = this.getChecker(move.getFrom());
-            this.setChecker(move.getTo(),temp);
-            this.setChecker(move.getFrom(),EMPTY);
-            this.chessBoardUpdate(move);
+    private void moveCheckers(int from, int to, PlayerColor player){    //Move the checker on the masks, capturing the opponent checker on the destination if there is one.
+        long fromBit = 1L << from;
+        long toBit = 1L << to;
+        int toRow = geometry.squareRow[to];
+        int toColumn = geometry.squareColumn[to];
+        int dRow = toRow - geometry.squareRow[from];
+        int dColumn = toColumn - geometry.squareColumn[from];
+        if (player == PLAYER_BK){
+            zobristKey ^= geometry.blackKeys[from] ^ geometry.blackKeys[to];
+            blackRowSum += dRow;
+            blackColumnSum += dColumn;
+            if ((whiteCheckers & toBit) != 0){
+                zobristKey ^= geometry.whiteKeys[to];
+                whiteCheckerNum--;
+                whiteRowSum -= toRow;
+                whiteColumnSum -= toColumn;
+            }
+            blackCheckers ^= fromBit | toBit;
+            whiteCheckers &= ~toBit;
+        }else{
+            zobristKey ^= geometry.whiteKeys[from] ^ geometry.whiteKeys[to];
+            whiteRowSum += dRow;
+            whiteColumnSum += dColumn;
+            if ((blackCheckers & toBit) != 0){
+                zobristKey ^= geometry.blackKeys[to];
+                blackCheckerNum--;
+                blackRowSum -= toRow;
+                blackColumnSum -= toColumn;
+            }
+            whiteCheckers ^= fromBit | toBit;
+            blackCheckers &= ~toBit;
         }
     }
 
+    private void lineCountsMoved(int from, int to, boolean captured){
+        /*
+        Update the counts of the lines(-,|,/,\) after a checker moved: the 4 lines through the start lose it and the 4 lines
+        through the destination gain it, unless it captured there, since the destination was already counted then.
+        Constant work, instead of recounting the lines.
+         */
+        lineCountsAdd(from, -1);
+        if (!captured){
+            lineCountsAdd(to, 1);
+        }
+    }
+
+    private void lineCountsAdd(int square, int delta){  //Add delta to the counts of the 4 lines through a square.
+        checkerNumInRow[geometry.squareRow[square]] += delta;
+        checkerNumInColumn[geometry.squareColumn[square]] += delta;
+        checkerNumInMainDiagonal[geometry.mainDiagonalOf(square)] += delta;
+        checkerNumInCounterDiagonal[geometry.counterDiagonalOf(square)] += delta;
+    }
+
 }
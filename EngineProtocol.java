@@ -0,0 +1,376 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static main.PlayerColor.PLAYER_BK;
+import static main.PlayerColor.PLAYER_WH;
+
+/**
+ * Line based engine protocol over stdin and stdout, in the style of UCI, so other programs can drive the engine.
+ * The commands are read on the main thread and the search runs on its own thread, so stop is handled during a search.
+ * One process keeps its engines, and their transposition tables, from one position to the next.
+ *
+ * Commands:
+ *   hello                                   Reply with the engine name, the options and "hellook".
+ *   isready                                 Reply "readyok".
+ *   setoption name NAME value VALUE         NAME is difficulty (1-3, 4 for Monte Carlo), threads, eval, solvernodes, nullmove (true or
+ *                                           false) or lmr (true or false).
+ *   newgame                                 Forget what the engines learnt from the earlier positions.
+ *   position startpos 5|6 [moves M...]      The initial board, black to move, then the moves.
+ *   position board TEXT B|W [moves M...]    A board in the text form of ChessBoard.parse and the player to move.
+ *   moves M...                              Make more moves on the current position.
+ *   go [depth N] [movetime MS] [nodes N] [infinite]
+ *                                           Search the current position. Print "info" lines, then "bestmove M".
+ *                                           Without limits, the depth and time of the difficulty are used.
+ *   stop                                    Stop the running search, which still prints its best move.
+ *   display                                 Print the position as "position TEXT B|W".
+ *   quit                                    Stop the search and exit.
+ * A move M is four digits: the row and column of the checker, then the row and column of the destination, counted
+ * from 1 like in Main. For example 1232 moves the checker of row 1, column 2 to row 3, column 2.
+ * Errors are reported as "info string error: ..." and the command is ignored.
+ */
+public class EngineProtocol {
+    private static final int INFINITE_DEPTH = 64;   //Depth limit of "go infinite", which runs until stop or a decided result.
+    private final PrintStream out;
+    private final ExecutorService searchThread = Executors.newSingleThreadExecutor();
+    private Future<?> search;   //The running or last search, null before the first one.
+    private final Map<PlayerColor, AI> ais = new EnumMap<>(PlayerColor.class);  //One engine per color to move, created when first used.
+    private final Map<PlayerColor, Integer> defaultDepths = new EnumMap<>(PlayerColor.class);
+    private int difficulty = 3;
+    private int threadNum = 1;
+    private CenterDistance eval = null;     //null keeps the evaluation of the difficulty.
+    private long solverNodeLimit = AI.SOLVER_NODES;
+    private boolean nullMove = true;
+    private boolean lateMoveReductions = true;
+    private ChessBoard board = new ChessBoard(5);
+    private PlayerColor toMove = PLAYER_BK;
+
+    public EngineProtocol(PrintStream out){
+        this.out = out;
+    }
+
+    public static void main(String[] args) throws IOException {
+        EngineProtocol protocol = new EngineProtocol(System.out);
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        while ((line = in.readLine()) != null){
+            if (!protocol.handle(line)){
+                break;
+            }
+        }
+        protocol.shutdown();
+    }
+
+    public boolean handle(String line){     //Handle one command line. Return false after quit.
+        String[] words = line.trim().split("\\s+");
+        try {
+            switch (words[0]){
+                case "":
+                    break;
+                case "hello":
+                    send("id name Line-of-Actions");
+                    send("option name difficulty type spin default 3 min 1 max " + AI.MONTE_CARLO);
+                    send("option name threads type spin default 1 min 1");
+                    send("option name eval type combo var MIN_DISTANCE var MAX_DISTANCE var SUM_DISTANCE");
+                    send("option name solvernodes type spin default " + AI.SOLVER_NODES + " min 0");
+                    send("option name nullmove type check default true");
+                    send("option name lmr type check default true");
+                    send("hellook");
+                    break;
+                case "isready":
+                    send("readyok");
+                    break;
+                case "setoption":
+                    stopAndWait();
+                    setOption(words);
+                    break;
+                case "newgame":
+                    stopAndWait();
+                    for (AI ai: ais.values()){
+                        ai.newGame();
+                    }
+                    break;
+                case "position":
+                    stopAndWait();
+                    setPosition(words);
+                    break;
+                case "moves":
+                    stopAndWait();
+                    makeMoves(words, 1);
+                    break;
+                case "go":
+                    go(words);
+                    break;
+                case "stop":
+                    stopSearch();
+                    break;
+                case "display":
+                    send("position " + board.toPositionString() + " " + (toMove == PLAYER_BK ? "B" : "W"));
+                    break;
+                case "quit":
+                    return false;
+                default:
+                    send("info string error: unknown command " + words[0]);
+            }
+        }catch (IllegalArgumentException | IllegalStateException e){
+            send("info string error: " + e.getMessage());
+        }
+        return true;
+    }
+
+    public void shutdown(){     //Stop the search and its thread.
+        stopAndWait();
+        searchThread.shutdown();
+    }
+
+    private void setOption(String[] words){
+        if (words.length != 5 || !words[1].equals("name") || !words[3].equals("value")){
+            throw new IllegalArgumentException("usage: setoption name NAME value VALUE");
+        }
+        String value = words[4];
+        switch (words[2]){
+            case "difficulty":
+                int newDifficulty = Integer.parseInt(value);
+                if (newDifficulty < 1 || newDifficulty > AI.MONTE_CARLO){
+                    throw new IllegalArgumentException("illegal difficulty " + value);
+                }
+                difficulty = newDifficulty;
+                ais.clear();    //The difficulty is fixed when an engine is created.
+                break;
+            case "threads":
+                int newThreadNum = Integer.parseInt(value);
+                if (newThreadNum < 1){
+                    throw new IllegalArgumentException("illegal number of threads " + value);
+                }
+                threadNum = newThreadNum;
+                break;
+            case "eval":
+                eval = CenterDistance.valueOf(value);
+                break;
+            case "solvernodes":
+                long newSolverNodeLimit = Long.parseLong(value);
+                if (newSolverNodeLimit < 0){
+                    throw new IllegalArgumentException("illegal node limit " + value);
+                }
+                solverNodeLimit = newSolverNodeLimit;
+                break;
+            case "nullmove":
+                nullMove = parseCheck(value);
+                break;
+            case "lmr":
+                lateMoveReductions = parseCheck(value);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown option " + words[2]);
+        }
+        for (AI ai: ais.values()){
+            configure(ai);
+        }
+    }
+
+    private void setPosition(String[] words){
+        int next;
+        ChessBoard newBoard;
+        PlayerColor newToMove;
+        if (words.length >= 3 && words[1].equals("startpos")){
+            int size = Integer.parseInt(words[2]);
+            if (size != 5 && size != 6){
+                throw new IllegalArgumentException("illegal board size " + size);
+            }
+            newBoard = new ChessBoard(size);
+            newToMove = PLAYER_BK;
+            next = 3;
+        }else if (words.length >= 4 && words[1].equals("board")){
+            newBoard = ChessBoard.parse(words[2]);
+            newToMove = parseColor(words[3]);
+            next = 4;
+        }else{
+            throw new IllegalArgumentException("usage: position startpos 5|6 | board TEXT B|W [moves ...]");
+        }
+        board = newBoard;
+        toMove = newToMove;
+        if (next < words.length){
+            if (!words[next].equals("moves")){
+                throw new IllegalArgumentException("expected moves instead of " + words[next]);
+            }
+            makeMoves(words, next + 1);
+        }
+    }
+
+    private void makeMoves(String[] words, int first){
+        //Make the moves from words[first] on. If one is invalid, none of them is made.
+        ChessBoard newBoard = new ChessBoard(board);
+        PlayerColor player = toMove;
+        for (int i = first; i < words.length; i++){
+            Move move = parseMove(words[i]);
+            if (!newBoard.moveCheck(move, player)){
+                throw new IllegalArgumentException("invalid move " + words[i]);
+            }
+            newBoard.makeMove(move, player);
+            player = opponentOf(player);
+        }
+        board = newBoard;
+        toMove = player;
+    }
+
+    private void go(String[] words){
+        if (search != null && !search.isDone()){
+            throw new IllegalStateException("a search is already running");
+        }
+        AI ai = aiFor(toMove);
+        ai.setDepthLimit(defaultDepths.get(toMove));
+        ai.setTimeLimit(AI.TIMELIMIT);
+        ai.setNodeLimit(0);
+        boolean depthGiven = false;
+        for (int i = 1; i < words.length; i++){
+            switch (words[i]){
+                case "depth":
+                    ai.setDepthLimit(Integer.parseInt(goValue(words, ++i)));
+                    depthGiven = true;
+                    break;
+                case "movetime":
+                    ai.setTimeLimit(Long.parseLong(goValue(words, ++i)));
+                    break;
+                case "nodes":
+                    ai.setNodeLimit(Long.parseLong(goValue(words, ++i)));
+                    break;
+                case "infinite":
+                    ai.setTimeLimit(Long.MAX_VALUE / 2);
+                    if (!depthGiven){
+                        ai.setDepthLimit(INFINITE_DEPTH);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown go parameter " + words[i]);
+            }
+        }
+        if (board.continuousCheck(PLAYER_BK) || board.continuousCheck(PLAYER_WH)
+                || board.generateMoves(toMove, new int[AI.MAX_MOVES]) == 0){   //No valid move at all loses the game.
+            throw new IllegalStateException("the game is over");
+        }
+        ai.aiInitialize();  //Here and not on the search thread, so a stop sent right after go is not lost.
+        ChessBoard searchBoard = new ChessBoard(board);
+        search = searchThread.submit(() -> {
+            try {
+                Move move = ai.alphaBetaSearch(searchBoard);
+                send("bestmove " + moveText(move));
+            }catch (RuntimeException e){
+                send("info string error: search failed: " + e);
+            }
+        });
+    }
+
+    private static String goValue(String[] words, int i){   //The value after a go parameter.
+        if (i >= words.length){
+            throw new IllegalArgumentException("missing value of go parameter " + words[i - 1]);
+        }
+        return words[i];
+    }
+
+    private void stopSearch(){
+        for (AI ai: ais.values()){
+            ai.stopSearch();
+        }
+    }
+
+    private void stopAndWait(){     //Stop the running search and wait until it has printed its best move.
+        stopSearch();
+        if (search != null){
+            try {
+                search.get();
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }catch (ExecutionException e){     //The search reports its own errors.
+            }
+        }
+    }
+
+    private AI aiFor(PlayerColor player){   //The engine playing the player, created with the current options when first needed.
+        AI ai = ais.get(player);
+        if (ai == null){
+            ai = new AI(difficulty, opponentOf(player), player);
+            ai.setVerbose(false);
+            ai.setMetricsEnabled(false);
+            ai.setSearchListener((depth, value, principalVariation, nodeNum, time) ->
+                    send(String.format(Locale.ROOT, "info depth %d score %.2f nodes %d time %d nps %d pv %s", depth, value, nodeNum, time,
+                            time == 0 ? 0 : nodeNum * 1000 / time, movesText(principalVariation))));
+            defaultDepths.put(player, ai.getDepthLimit());
+            configure(ai);
+            ais.put(player, ai);
+        }
+        return ai;
+    }
+
+    private void configure(AI ai){
+        ai.setThreadNum(threadNum);
+        if (eval != null){
+            ai.setCenterDistance(eval);
+        }
+        ai.setSolverNodeLimit(solverNodeLimit);
+        ai.getSearchOptions().setNullMove(nullMove);
+        ai.getSearchOptions().setLateMoveReductions(lateMoveReductions);
+    }
+
+    private synchronized void send(String line){    //Both threads print, one line at a time.
+        out.println(line);
+        out.flush();
+    }
+
+    private Move parseMove(String text){
+        if (text.length() != 4){
+            throw new IllegalArgumentException("illegal move " + text);
+        }
+        int[] numbers = new int[4];
+        for (int i = 0; i < 4; i++){
+            numbers[i] = text.charAt(i) - '1';
+            if (numbers[i] < 0 || numbers[i] >= board.boardSize){
+                throw new IllegalArgumentException("illegal move " + text);
+            }
+        }
+        return new Move(new BoardLocation(numbers[0], numbers[1]), new BoardLocation(numbers[2], numbers[3]));
+    }
+
+    private static String moveText(Move move){
+        return "" + (move.getFrom().getRow() + 1) + (move.getFrom().getColumn() + 1)
+                + (move.getTo().getRow() + 1) + (move.getTo().getColumn() + 1);
+    }
+
+    private static boolean parseCheck(String text){
+        if (!text.equals("true") && !text.equals("false")){
+            throw new IllegalArgumentException("expected true or false instead of " + text);
+        }
+        return text.equals("true");
+    }
+
+    private static String movesText(List<Move> moves){
+        StringBuilder text = new StringBuilder();
+        for (Move move: moves){
+            text.append(text.length() == 0 ? "" : " ").append(moveText(move));
+        }
+        return text.toString();
+    }
+
+    private static PlayerColor parseColor(String text){
+        if (text.equals("B")){
+            return PLAYER_BK;
+        }else if (text.equals("W")){
+            return PLAYER_WH;
+        }
+        throw new IllegalArgumentException("illegal color " + text);
+    }
+
+    private static PlayerColor opponentOf(PlayerColor player){
+        return player == PLAYER_BK ? PLAYER_WH : PLAYER_BK;
+    }
+}
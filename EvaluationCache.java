@@ -0,0 +1,77 @@
+package main;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size cache of the values of the evaluation function, kept in primitive arrays so a probe or a store never
+ * allocates. Each position has one slot, and a new value simply replaces the one in its slot.
+ * It is shared by the search workers without locks the same way as the transposition table: each slot keeps the key
+ * xor-ed with the data word, so an entry torn by two threads writing at the same time is read as a miss.
+ */
+public class EvaluationCache {
+    public static final int DEFAULT_SIZE = 1 << 16;    //Default number of entries.
+
+    /*
+    Layout of a data word:
+    bits 0-31 value (float bits), bit 63 used flag.
+     */
+    private static final long USED = 1L << 63;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int mask;
+    private final LongAdder hitNum = new LongAdder();
+    private final LongAdder missNum = new LongAdder();
+
+    public EvaluationCache(int size){   //The size is rounded down to a power of two.
+        int entries = Integer.highestOneBit(Math.max(size, 1));
+        this.keys = new long[entries];
+        this.data = new long[entries];
+        this.mask = entries - 1;
+    }
+
+    public void newSearch(){    //Called before every search. Reset the statistics, the values stay valid.
+        hitNum.reset();
+        missNum.reset();
+    }
+
+    public void clear(){    //Forget all the values, needed when the evaluation function changes.
+        Arrays.fill(keys, 0);
+        Arrays.fill(data, 0);
+    }
+
+    public long probe(long key){    //Look up a position. Return its data word, or 0 if the position is not stored. Use valueOf to read the word.
+        int slot = (int) key & mask;
+        long word = data[slot];
+        if (word != 0 && (keys[slot] ^ word) == key){
+            hitNum.increment();
+            return word;
+        }
+        missNum.increment();
+        return 0;
+    }
+
+    public void store(long key, float value){
+        int slot = (int) key & mask;
+        long word = USED | (Float.floatToIntBits(value) & 0xFFFFFFFFL);
+        keys[slot] = key ^ word;
+        data[slot] = word;
+    }
+
+    public static float valueOf(long word){
+        return Float.intBitsToFloat((int) word);
+    }
+
+    public int getSize() {
+        return keys.length;
+    }
+
+    public long getHitNum() {
+        return hitNum.sum();
+    }
+
+    public long getMissNum() {
+        return missNum.sum();
+    }
+}
@@ -10,6 +10,16 @@ import static main.PlayerColor.PLAYER_WH;
  */
 public class Main {     //The game console function. The main running function.
     public static void main(String[] args){
+        boolean ponder = false;     //With -ponder the computer searches while the human thinks.
+        for (String arg: args){
+            switch (arg){
+                case "-ponder":
+                    ponder = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
         Main gameConsole = new Main();
         System.out.printf("Welcome to the world of Lines of Actions!%n");
         ChessBoard chessBoard = gameConsole.createBoard();
@@ -27,6 +37,11 @@ public class Main {     //The game console function. The main running function.
         }
         do {
             currentPlayer = gameConsole.getOpponent(currentPlayer);
+            if (ai.generateMoves(chessBoard, currentPlayer).isEmpty()){  //A player without any valid move loses.
+                System.out.printf("No valid move left. %n");
+                currentPlayer = gameConsole.getOpponent(currentPlayer);
+                break;
+            }
             if (human.equals(currentPlayer)){
                 Move move = gameConsole.getMove(human,chessBoard);
                 chessBoard.makeMove(move, human);
@@ -37,6 +52,9 @@ public class Main {     //The game console function. The main running function.
                 Move move = ai.alphaBetaSearch(chessBoard);
                 chessBoard.makeMove(move,computer);
                 chessBoard.chessBoardDisplay();
+                if (ponder && !chessBoard.continuousCheck(computer) && !chessBoard.continuousCheck(human)){
+                    ai.startPondering(chessBoard);
+                }
             }
         }while(!chessBoard.continuousCheck(currentPlayer) && !chessBoard.continuousCheck(gameConsole.getComputerColor(currentPlayer))); //When one of the player wins. Jump out the loop.
 
@@ -49,10 +67,10 @@ public class Main {     //The game console function. The main running function.
     }
 
     private int getDifficulty() {   //Get difficulty from terminal
-        System.out.print("Choose the difficulty for game, 1 for easy, 2 for medium, 3 for hard:");
+        System.out.print("Choose the difficulty for game, 1 for easy, 2 for medium, 3 for hard, 4 for Monte Carlo:");
         Scanner scanner = new Scanner(System.in);
         int difficulty = scanner.nextInt();
-        while (difficulty != 1 && difficulty != 2 && difficulty != 3){
+        while (difficulty < 1 || difficulty > AI.MONTE_CARLO){
             System.out.printf("Wrong size input. Please reenter the size: ");
             difficulty = scanner.nextInt();
         }
@@ -60,8 +78,10 @@ public class Main {     //The game console function. The main running function.
             return 1;
         }else if (difficulty == 2){
             return 2;
-        }else {
+        }else if (difficulty == 3){
             return 3;
+        }else {
+            return AI.MONTE_CARLO;
         }
     }
 
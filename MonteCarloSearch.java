@@ -0,0 +1,300 @@
+package main;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monte Carlo tree search, the engine of the difficulty AI.MONTE_CARLO next to the alpha-beta search.
+ *
+ * Every iteration walks down the tree choosing children by UCT, expands the leaf it reaches, plays the game out with
+ * lightly biased random moves and adds the result to every node of the path. All the worker threads share one tree
+ * (tree parallelism). The statistics are updated with atomic adds and a node is expanded by the thread that wins a
+ * compare-and-set on its state, so there are no locks. While a thread walks a path, its nodes carry a virtual loss: a
+ * few visits without wins that make the other threads prefer other branches until the result is added.
+ *
+ * The nodes live in a pool of primitive arrays sized by a memory cap. When the pool is full, the tree stops growing
+ * and the iterations play out from the leaves they reach.
+ */
+public class MonteCarloSearch {
+    public static final long DEFAULT_MEMORY = 64L << 20;    //Memory of the node pool in bytes.
+    public static final int NODE_BYTES = 6 * 4;     //Bytes of a node in the 6 arrays of the pool.
+    private static final double EXPLORATION = Math.sqrt(2);     //Weight of the exploration term of UCT.
+    private static final int VIRTUAL_LOSS = 3;  //Visits without wins added to the nodes of a path while it is played.
+    private static final int MAX_PLAYOUT_PLIES = 200;   //A playout this long ends in a draw.
+    private static final int LEAF = 0, EXPANDING = 1, EXPANDED = 2, TERMINAL = 3;   //States of a node. A terminal node has no moves.
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final int capacity;     //Number of nodes of the pool.
+    private final int[] moves;  //Packed move leading to each node.
+    private final int[] firstChildren;  //Index of the first child of each expanded node, the children are next to each other.
+    private final int[] childNums;
+    private final int[] states;
+    private final int[] visits;     //Visits of each node, virtual losses included.
+    private final int[] scores;     //Twice the wins of the player who moved into each node, a draw counts 1.
+    private final AtomicInteger nodeNum = new AtomicInteger();  //Nodes of the pool in use.
+    private final AtomicLong playoutNum = new AtomicLong();
+    private volatile boolean full;  //Set when an expansion did not fit in the pool.
+    private long startTime;     //System.nanoTime at the start of the last search.
+    private long endTime;
+
+    public MonteCarloSearch(long memory){   //A search whose node pool takes about the given bytes.
+        long nodes = memory / NODE_BYTES;
+        if (nodes < 1024 || nodes > Integer.MAX_VALUE){
+            throw new IllegalArgumentException("Illegal memory size!");
+        }
+        this.capacity = (int) nodes;
+        this.moves = new int[capacity];
+        this.firstChildren = new int[capacity];
+        this.childNums = new int[capacity];
+        this.states = new int[capacity];
+        this.visits = new int[capacity];
+        this.scores = new int[capacity];
+    }
+
+    public int search(AI ai, ChessBoard startBoard, PlayerColor player, int threadNum, long playoutLimit){
+        /*
+        Search the position with the player to move on threadNum threads, until the AI is stopped, its deadline passes
+        or playoutLimit playouts are done. Return the packed move of the most visited child of the root, or
+        TranspositionTable.NO_MOVE if the player has no move at all.
+         */
+        nodeNum.set(1);
+        playoutNum.set(0);
+        full = false;
+        moves[0] = TranspositionTable.NO_MOVE;
+        states[0] = LEAF;
+        visits[0] = 0;
+        scores[0] = 0;
+        startTime = System.nanoTime();
+        Thread[] threads = new Thread[threadNum];
+        for (int i = 1; i < threadNum; i++){    //The helpers run on their own threads, the first worker on this one.
+            long seed = startTime + i;
+            threads[i] = new Thread(() -> runWorker(ai, startBoard, player, playoutLimit, seed), "monte-carlo-worker-" + i);
+            threads[i].start();
+        }
+        runWorker(ai, startBoard, player, playoutLimit, startTime);
+        for (int i = 1; i < threadNum; i++){
+            try {
+                threads[i].join();
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+        endTime = System.nanoTime();
+        int best = bestChild();
+        if (best < 0){  //Not even the root was expanded.
+            int[] rootMoves = new int[AI.MAX_MOVES];
+            return startBoard.generateMoves(player, rootMoves) == 0 ? TranspositionTable.NO_MOVE : rootMoves[0];
+        }
+        return moves[best];
+    }
+
+    private void runWorker(AI ai, ChessBoard startBoard, PlayerColor rootPlayer, long playoutLimit, long seed){
+        ChessBoard board = new ChessBoard(startBoard);  //Every thread makes and takes back the moves on its own board.
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] moveBuffer = new int[AI.MAX_MOVES];
+        int[] path = new int[64];
+        while (!ai.isStopped() && System.currentTimeMillis() <= ai.getDeadline() && playoutNum.getAndIncrement() < playoutLimit){
+            /*
+            Selection: from the root, go to the child with the best UCT value until a node without children, a node
+            visited for the first time or the end of the game.
+             */
+            int node = 0;
+            int length = 0;
+            path[length++] = node;
+            INTS.getAndAdd(visits, node, VIRTUAL_LOSS);
+            PlayerColor toMove = rootPlayer;
+            PlayerColor winner = null;
+            while (winner == null){
+                if ((int) INTS.getAcquire(states, node) != EXPANDED && !expand(node, board, toMove, moveBuffer)){
+                    if ((int) INTS.getAcquire(states, node) == TERMINAL){
+                        winner = opponentOf(toMove);
+                    }
+                    break;
+                }
+                int child = selectChild(node);
+                boolean fresh = (int) INTS.getAndAdd(visits, child, VIRTUAL_LOSS) == 0;
+                board.applyMove(moves[child], toMove);
+                if (length == path.length){
+                    path = Arrays.copyOf(path, length * 2);
+                }
+                path[length++] = child;
+                winner = winnerAfter(board, toMove);
+                toMove = opponentOf(toMove);
+                node = child;
+                if (fresh){
+                    break;
+                }
+            }
+            if (winner == null){
+                winner = playout(board, toMove, moveBuffer, random);
+            }
+            for (int i = 1; i < length; i++){
+                board.undoMove();
+            }
+            /*
+            Backpropagation: take the virtual loss back and add the result, seen from the player who moved into each
+            node. The root counts as moved into by the opponent of the player to move.
+             */
+            PlayerColor mover = opponentOf(rootPlayer);
+            for (int i = 0; i < length; i++){
+                int nodeOfPath = path[i];
+                INTS.getAndAdd(visits, nodeOfPath, 1 - VIRTUAL_LOSS);
+                int score = winner == null ? 1 : winner == mover ? 2 : 0;
+                if (score != 0){
+                    INTS.getAndAdd(scores, nodeOfPath, score);
+                }
+                mover = opponentOf(mover);
+            }
+        }
+    }
+
+    private boolean expand(int node, ChessBoard board, PlayerColor toMove, int[] moveBuffer){
+        /*
+        Give the node a child for each move. Return false if another thread is expanding it, the pool is full or the
+        player to move has no move at all, which marks the node terminal: a loss for that player, like in the search.
+         */
+        if (full || !INTS.compareAndSet(states, node, LEAF, EXPANDING)){
+            return false;
+        }
+        int moveNum = board.generateMoves(toMove, moveBuffer);
+        if (moveNum == 0){
+            INTS.setRelease(states, node, TERMINAL);
+            return false;
+        }
+        int first = nodeNum.getAndAdd(moveNum);
+        if (first + moveNum > capacity){
+            full = true;
+            INTS.setRelease(states, node, LEAF);
+            return false;
+        }
+        for (int i = 0; i < moveNum; i++){
+            int child = first + i;
+            moves[child] = moveBuffer[i];
+            states[child] = LEAF;
+            visits[child] = 0;
+            scores[child] = 0;
+        }
+        firstChildren[node] = first;
+        childNums[node] = moveNum;
+        INTS.setRelease(states, node, EXPANDED);    //The children are visible to every thread that sees the state.
+        return true;
+    }
+
+    private int selectChild(int node){  //The child with the best UCT value, or the first one never visited.
+        int first = firstChildren[node];
+        int end = first + childNums[node];
+        double logParent = Math.log(Math.max(1, (int) INTS.getOpaque(visits, node)));
+        int best = first;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int child = first; child < end; child++){
+            int childVisits = (int) INTS.getOpaque(visits, child);
+            if (childVisits == 0){
+                return child;
+            }
+            double value = (int) INTS.getOpaque(scores, child) / (2.0 * childVisits) + EXPLORATION * Math.sqrt(logParent / childVisits);
+            if (value > bestValue){
+                bestValue = value;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    private PlayerColor playout(ChessBoard board, PlayerColor toMove, int[] moveBuffer, SplittableRandom random){
+        //Play the game out and take the moves back. Return the winner, null for a draw after MAX_PLAYOUT_PLIES.
+        int plies = 0;
+        PlayerColor winner = null;
+        while (plies < MAX_PLAYOUT_PLIES){
+            int moveNum = board.generateMoves(toMove, moveBuffer);
+            if (moveNum == 0){  //No move at all is a loss.
+                winner = opponentOf(toMove);
+                break;
+            }
+            board.applyMove(pickMove(board, toMove, moveBuffer, moveNum, random), toMove);
+            plies++;
+            winner = winnerAfter(board, toMove);
+            if (winner != null){
+                break;
+            }
+            toMove = opponentOf(toMove);
+        }
+        for (int i = 0; i < plies; i++){
+            board.undoMove();
+        }
+        return winner;
+    }
+
+    private int pickMove(ChessBoard board, PlayerColor player, int[] moveBuffer, int moveNum, SplittableRandom random){
+        //Of two random moves, the one landing nearer the player's center of mass, which leans the playout towards connecting.
+        int first = moveBuffer[random.nextInt(moveNum)];
+        int second = moveBuffer[random.nextInt(moveNum)];
+        int checkerNum = board.getCheckerNum(player);
+        float row = (float) board.getRowSum(player) / checkerNum;
+        float column = (float) board.getColumnSum(player) / checkerNum;
+        return distance(board.geometry, PackedMove.toSquare(first), row, column)
+                <= distance(board.geometry, PackedMove.toSquare(second), row, column) ? first : second;
+    }
+
+    private static float distance(BoardGeometry geometry, int square, float row, float column){
+        return Math.max(Math.abs(geometry.squareRow[square] - row), Math.abs(geometry.squareColumn[square] - column));
+    }
+
+    private static PlayerColor winnerAfter(ChessBoard board, PlayerColor mover){    //The winner after the mover's move, null if the game goes on.
+        if (board.continuousCheck(mover)){
+            return mover;
+        }
+        PlayerColor opponent = opponentOf(mover);
+        return board.continuousCheck(opponent) ? opponent : null;
+    }
+
+    private static PlayerColor opponentOf(PlayerColor player){
+        return player == PlayerColor.PLAYER_BK ? PlayerColor.PLAYER_WH : PlayerColor.PLAYER_BK;
+    }
+
+    private int bestChild(){    //The most visited child of the root, -1 if the root has no children.
+        if (states[0] != EXPANDED){
+            return -1;
+        }
+        int best = firstChildren[0];
+        for (int child = best + 1; child < firstChildren[0] + childNums[0]; child++){
+            if (visits[child] > visits[best]){
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    public float getBestWinRate(){  //Share of the playouts through the chosen move won by the player to move, draws count half.
+        int best = bestChild();
+        return best < 0 || visits[best] == 0 ? 0.5f : scores[best] / (2.0f * visits[best]);
+    }
+
+    public long getPlayoutNum(){
+        return Math.min(playoutNum.get(), (long) visits[0]);    //The counter also counts the tries of the threads that stopped.
+    }
+
+    public int getNodeNum(){    //Nodes of the tree.
+        return Math.min(nodeNum.get(), capacity);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public boolean isFull() {   //Whether the tree stopped growing because the pool was full.
+        return full;
+    }
+
+    public long getElapsedNanos(){
+        return endTime - startTime;
+    }
+
+    public double getPlayoutsPerSecond(){
+        long elapsed = getElapsedNanos();
+        return elapsed <= 0 ? 0 : getPlayoutNum() * 1e9 / elapsed;
+    }
+}
@@ -0,0 +1,94 @@
+package main;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Opening book written by OpeningBookBuilder: the move to play in the early positions of the game, for each difficulty.
+ * The file is memory-mapped read-only and searched in place, so one book is shared by all the AIs without copying it.
+ *
+ * After the header, the entries are sorted by the position key (ChessBoard.positionKey) and then by the difficulty.
+ * Each entry takes ENTRY_SIZE bytes: the key as a long, the packed move as an int, then the difficulty and the depth
+ * the move was searched to, as shorts.
+ */
+public class OpeningBook {
+    public static final String DEFAULT_FILE = "openingbook.bin";
+    public static final int MAGIC = 0x4C4F4142;     //"LOAB" at the start of the file.
+    public static final int HEADER_SIZE = 8;    //Magic and the number of entries.
+    public static final int ENTRY_SIZE = 16;
+    private static OpeningBook defaultBook;
+    private static boolean defaultLoaded = false;
+    private final MappedByteBuffer buffer;
+    private final int entryNum;
+
+    private OpeningBook(MappedByteBuffer buffer, int entryNum){
+        this.buffer = buffer;
+        this.entryNum = entryNum;
+    }
+
+    public static OpeningBook open(Path file) throws IOException {  //Map a book file written by OpeningBookBuilder.
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC){
+                throw new IOException("Not an opening book: " + file);
+            }
+            int entryNum = buffer.getInt(4);
+            if (entryNum < 0 || buffer.limit() != HEADER_SIZE + (long) entryNum * ENTRY_SIZE){
+                throw new IOException("Broken opening book: " + file);
+            }
+            return new OpeningBook(buffer, entryNum);
+        }
+    }
+
+    public static synchronized OpeningBook getDefault(){
+        //The book of DEFAULT_FILE in the working directory, shared by all the AIs. null if there is no such file.
+        if (!defaultLoaded){
+            defaultLoaded = true;
+            Path file = Paths.get(DEFAULT_FILE);
+            if (Files.isRegularFile(file)){
+                try {
+                    defaultBook = open(file);
+                }catch (IOException e){
+                    System.err.println("Can't load the opening book: " + e.getMessage());
+                }
+            }
+        }
+        return defaultBook;
+    }
+
+    public int getEntryNum() {
+        return entryNum;
+    }
+
+    public int lookup(long key, int difficulty){
+        /*
+        Return the packed move of the position for the difficulty, or TranspositionTable.NO_MOVE if it is not in the book.
+        Binary search for the first entry of the key, then go through the entries of that key.
+         */
+        int low = 0;
+        int high = entryNum;
+        while (low < high){
+            int middle = (low + high) >>> 1;
+            if (keyAt(middle) < key){
+                low = middle + 1;
+            }else{
+                high = middle;
+            }
+        }
+        for (int i = low; i < entryNum && keyAt(i) == key; i++){
+            if (buffer.getShort(HEADER_SIZE + i * ENTRY_SIZE + 12) == difficulty){
+                return buffer.getInt(HEADER_SIZE + i * ENTRY_SIZE + 8);
+            }
+        }
+        return TranspositionTable.NO_MOVE;
+    }
+
+    private long keyAt(int entry){
+        return buffer.getLong(HEADER_SIZE + entry * ENTRY_SIZE);
+    }
+}
@@ -0,0 +1,192 @@
+package main;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static main.PlayerColor.PLAYER_BK;
+import static main.PlayerColor.PLAYER_WH;
+
+/**
+ * Writes the opening book read by OpeningBook. For each board size, difficulty and computer color, the positions of the
+ * first plies are searched with a long time limit, one ply at a time: at the computer's turn the searched move is
+ * followed, at the opponent's turn every move is, so the book answers whatever the opponent plays.
+ * The searches of a ply run in parallel, one AI per position.
+ *
+ * Usage: java main.OpeningBookBuilder [-sizes 5,6] [-difficulties 1,2,3] [-plies N] [-depth N] [-time MS] [-threads N]
+ *                                     [-out FILE]
+ */
+public class OpeningBookBuilder {
+
+    private static class Entry {
+        final long key;
+        final int move;
+        final int difficulty;
+        final int depth;
+
+        Entry(long key, int move, int difficulty, int depth){
+            this.key = key;
+            this.move = move;
+            this.difficulty = difficulty;
+            this.depth = depth;
+        }
+    }
+
+    private int[] sizes = {5, 6};
+    private int[] difficulties = {1, 2, 3};
+    private int plies = 4;  //Positions up to this many plies from the initial board are in the book.
+    private int depth = 9;
+    private long time = 5000;   //Time limit of each search in ms.
+    private int threadNum = Runtime.getRuntime().availableProcessors();
+    private Path file = Paths.get(OpeningBook.DEFAULT_FILE);
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        OpeningBookBuilder builder = new OpeningBookBuilder();
+        for (int i = 0; i + 1 < args.length; i += 2){
+            String value = args[i + 1];
+            switch (args[i]){
+                case "-sizes":
+                    builder.sizes = parseList(value);
+                    break;
+                case "-difficulties":
+                    builder.difficulties = parseList(value);
+                    break;
+                case "-plies":
+                    builder.plies = Integer.parseInt(value);
+                    break;
+                case "-depth":
+                    builder.depth = Integer.parseInt(value);
+                    break;
+                case "-time":
+                    builder.time = Long.parseLong(value);
+                    break;
+                case "-threads":
+                    builder.threadNum = Integer.parseInt(value);
+                    break;
+                case "-out":
+                    builder.file = Paths.get(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        builder.run();
+    }
+
+    private static int[] parseList(String text){
+        String[] items = text.split(",");
+        int[] values = new int[items.length];
+        for (int i = 0; i < items.length; i++){
+            values[i] = Integer.parseInt(items[i]);
+        }
+        return values;
+    }
+
+    public void run() throws IOException, InterruptedException, ExecutionException {
+        long start = System.currentTimeMillis();
+        List<Entry> entries = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threadNum);
+        try {
+            for (int size: sizes){
+                for (int difficulty: difficulties){
+                    for (PlayerColor computer: new PlayerColor[]{PLAYER_BK, PLAYER_WH}){
+                        int before = entries.size();
+                        build(pool, size, difficulty, computer, entries);
+                        System.out.printf("%d*%d, difficulty %d, computer %s: %d positions.%n",
+                                size, size, difficulty, computer, entries.size() - before);
+                    }
+                }
+            }
+        }finally {
+            pool.shutdown();
+        }
+        entries.sort(Comparator.comparingLong((Entry entry) -> entry.key).thenComparingInt(entry -> entry.difficulty));
+        write(entries);
+        System.out.printf("Wrote %s with %d entries in %d ms.%n", file, entries.size(), System.currentTimeMillis() - start);
+    }
+
+    private void build(ExecutorService pool, int size, int difficulty, PlayerColor computer, List<Entry> entries)
+            throws InterruptedException, ExecutionException {
+        PlayerColor human = computer == PLAYER_BK ? PLAYER_WH : PLAYER_BK;
+        List<ChessBoard> frontier = new ArrayList<>();
+        frontier.add(new ChessBoard(size));
+        PlayerColor player = PLAYER_BK;     //Black moves first.
+        for (int ply = 0; ply < plies; ply++){
+            List<ChessBoard> next = new ArrayList<>();
+            Set<Long> seen = new HashSet<>();   //Keys of the positions in next, the same position can be reached twice.
+            if (player == computer){
+                List<Future<Entry>> futures = new ArrayList<>();
+                for (ChessBoard board: frontier){
+                    futures.add(pool.submit(() -> search(board, difficulty, computer, human)));
+                }
+                for (int i = 0; i < frontier.size(); i++){
+                    Entry entry = futures.get(i).get();
+                    if (entry == null){     //No move, the game is over.
+                        continue;
+                    }
+                    entries.add(entry);
+                    addChild(frontier.get(i), entry.move, computer, next, seen);
+                }
+            }else{
+                int[] moves = new int[AI.MAX_MOVES];
+                for (ChessBoard board: frontier){
+                    int moveNum = board.generateMoves(player, moves);
+                    for (int i = 0; i < moveNum; i++){
+                        addChild(board, moves[i], player, next, seen);
+                    }
+                }
+            }
+            frontier = next;
+            player = player == PLAYER_BK ? PLAYER_WH : PLAYER_BK;
+        }
+    }
+
+    private Entry search(ChessBoard board, int difficulty, PlayerColor computer, PlayerColor human){   //Search a position of the computer's turn, null if it has no move.
+        AI ai = new AI(difficulty, human, computer);
+        ai.setDepthLimit(depth);
+        ai.setTimeLimit(time);
+        ai.setVerbose(false);
+        ai.setMetricsEnabled(false);
+        ai.setOpeningBook(null);
+        ai.aiInitialize();
+        Move move = ai.alphaBetaSearch(board);
+        if (move == null){
+            return null;
+        }
+        return new Entry(board.positionKey(computer), PackedMove.fromMove(move, board), difficulty, ai.getFinalDepth());
+    }
+
+    private void addChild(ChessBoard board, int move, PlayerColor player, List<ChessBoard> next, Set<Long> seen){
+        //Add the position after the move to the next ply, unless the game is over or the position is already there.
+        ChessBoard child = new ChessBoard(board);
+        child.applyMove(move, player);
+        PlayerColor opponent = player == PLAYER_BK ? PLAYER_WH : PLAYER_BK;
+        if (child.continuousCheck(player) || child.continuousCheck(opponent) || !seen.add(child.positionKey(opponent))){
+            return;
+        }
+        next.add(new ChessBoard(child));    //A fresh copy, without the undo record.
+    }
+
+    private void write(List<Entry> entries) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(OpeningBook.HEADER_SIZE + entries.size() * OpeningBook.ENTRY_SIZE);
+        buffer.putInt(OpeningBook.MAGIC).putInt(entries.size());
+        for (Entry entry: entries){
+            buffer.putLong(entry.key).putInt(entry.move).putShort((short) entry.difficulty).putShort((short) entry.depth);
+        }
+        try (OutputStream out = Files.newOutputStream(file)){
+            out.write(buffer.array());
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package main;
+
+/**
+ * A move packed into an int, used by the search instead of Move objects:
+ * bits 0-5 from square, bits 6-11 to square, bit 12 set if the move captures an opponent checker.
+ * Squares are the bit indexes of BoardGeometry. 0 is never a valid move, since from and to can't both be square 0.
+ */
+public final class PackedMove {
+    public static final int CAPTURE = 1 << 12;
+    public static final int SQUARES_MASK = 0xFFF;  //The from and to squares, without the capture flag.
+
+    private PackedMove(){
+    }
+
+    public static int encode(int from, int to, boolean capture){
+        return from | to << 6 | (capture ? CAPTURE : 0);
+    }
+
+    public static int fromSquare(int move){
+        return move & 0x3F;
+    }
+
+    public static int toSquare(int move){
+        return (move >>> 6) & 0x3F;
+    }
+
+    public static boolean isCapture(int move){
+        return (move & CAPTURE) != 0;
+    }
+
+    public static boolean sameSquares(int move, int otherMove){     //Whether two moves go between the same squares, ignoring the capture flag.
+        return (move & SQUARES_MASK) == (otherMove & SQUARES_MASK);
+    }
+
+    public static int fromMove(Move move, ChessBoard board){    //Pack a Move made on the given board.
+        BoardGeometry geometry = board.geometry;
+        int from = geometry.square(move.getFrom().getRow(), move.getFrom().getColumn());
+        int to = geometry.square(move.getTo().getRow(), move.getTo().getColumn());
+        return encode(from, to, ((board.blackCheckers | board.whiteCheckers) & (1L << to)) != 0);
+    }
+
+    public static Move toMove(int move, BoardGeometry geometry){    //Unpack into a Move, for the callers outside the search.
+        int from = fromSquare(move);
+        int to = toSquare(move);
+        return new Move(new BoardLocation(geometry.squareRow[from], geometry.squareColumn[from]),
+                new BoardLocation(geometry.squareRow[to], geometry.squareColumn[to]));
+    }
+}
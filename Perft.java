@@ -0,0 +1,267 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static main.PlayerColor.PLAYER_BK;
+import static main.PlayerColor.PLAYER_WH;
+
+/**
+ * Perft: count the leaf nodes of the move tree to a fixed depth, to check the move generation and time it.
+ * A won position is not a leaf, the counting goes on through it, so only the move generation is measured.
+ *
+ * Usage: java main.Perft [-size 5|6] [-position TEXT] [-player B|W] [-depth N] [-divide] [-nobulk] [-threads N]
+ *                        [-moveCheck] [-verify]
+ * -position takes the text form of ChessBoard.parse and overrides -size, black moves first unless -player W.
+ * -divide prints the count of every root move. -nobulk makes and takes back the moves of the last ply too, instead of
+ * counting them. -threads splits the root moves over a fork-join pool. -moveCheck counts with a slow generator trying
+ * every square with ChessBoard.moveCheck, to cross check generateMoves. -verify checks the reference counts below.
+ */
+public class Perft {
+
+    private static final String[] REFERENCE_POSITIONS = {   //The initial boards, black to move.
+            "-BBB-/W---W/W---W/W---W/-BBB-",
+            "-BBBB-/W----W/W----W/W----W/W----W/-BBBB-",
+    };
+    private static final long[][] REFERENCE_COUNTS = {  //Leaf counts of the reference positions from depth 1, the same with -moveCheck.
+            {18, 280, 4164, 56332, 752484},
+            {24, 524, 11440, 234560, 4853792},
+    };
+
+    private final boolean bulk;
+    private final boolean slow;
+
+    public Perft(boolean bulk, boolean slow){
+        this.bulk = bulk;
+        this.slow = slow;
+    }
+
+    public static void main(String[] args){
+        int size = 5;
+        String position = null;
+        PlayerColor player = PLAYER_BK;
+        int depth = 4;
+        boolean divide = false;
+        boolean bulk = true;
+        int threadNum = 1;
+        boolean slow = false;
+        boolean verify = false;
+        for (int i = 0; i < args.length; i++){
+            switch (args[i]){
+                case "-size":
+                    size = Integer.parseInt(args[++i]);
+                    break;
+                case "-position":
+                    position = args[++i];
+                    break;
+                case "-player":
+                    player = args[++i].equals("W") ? PLAYER_WH : PLAYER_BK;
+                    break;
+                case "-depth":
+                    depth = Integer.parseInt(args[++i]);
+                    break;
+                case "-divide":
+                    divide = true;
+                    break;
+                case "-nobulk":
+                    bulk = false;
+                    break;
+                case "-threads":
+                    threadNum = Integer.parseInt(args[++i]);
+                    break;
+                case "-moveCheck":
+                    slow = true;
+                    break;
+                case "-verify":
+                    verify = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        Perft perft = new Perft(bulk, slow);
+        if (verify){
+            if (!perft.verify(threadNum)){
+                System.exit(1);
+            }
+            return;
+        }
+        ChessBoard board = position != null ? ChessBoard.parse(position) : new ChessBoard(size);
+        perft.run(board, player, depth, divide, threadNum);
+    }
+
+    public long run(ChessBoard board, PlayerColor player, int depth, boolean divide, int threadNum){
+        //Count and print the leaves to the depth, with the count of every root move if divide is set.
+        long start = System.nanoTime();
+        List<Move> rootMoves = new ArrayList<>();
+        long[] counts = threadNum > 1 ? parallelDivide(board, player, depth, threadNum, rootMoves) : divide(board, player, depth, rootMoves);
+        long elapsed = System.nanoTime() - start;
+        long total = 0;
+        for (int i = 0; i < counts.length; i++){
+            total += counts[i];
+            if (divide){
+                Move move = rootMoves.get(i);
+                System.out.printf("%d %d %d %d: %d%n", move.getFrom().getRow(), move.getFrom().getColumn(),
+                        move.getTo().getRow(), move.getTo().getColumn(), counts[i]);
+            }
+        }
+        if (depth == 0){
+            total = 1;
+        }
+        System.out.printf("Perft %d: %d nodes in %.3f s, %.0f nodes/s.%n", depth, total, elapsed / 1e9,
+                elapsed == 0 ? 0.0 : 1e9 * total / elapsed);
+        return total;
+    }
+
+    public boolean verify(int threadNum){  //Check the counts of the reference positions, return false if any differs.
+        boolean passed = true;
+        for (int p = 0; p < REFERENCE_POSITIONS.length; p++){
+            for (int depth = 1; depth <= REFERENCE_COUNTS[p].length; depth++){
+                ChessBoard board = ChessBoard.parse(REFERENCE_POSITIONS[p]);
+                System.out.printf("%s ", REFERENCE_POSITIONS[p]);
+                long count = run(board, PLAYER_BK, depth, false, threadNum);
+                if (count != REFERENCE_COUNTS[p][depth - 1]){
+                    System.out.printf("Wrong count at depth %d: %d, expected %d.%n", depth, count, REFERENCE_COUNTS[p][depth - 1]);
+                    passed = false;
+                }
+            }
+        }
+        System.out.println(passed ? "All the counts are right." : "Some counts are wrong!");
+        return passed;
+    }
+
+    private long[] divide(ChessBoard board, PlayerColor player, int depth, List<Move> rootMoves){  //Count the leaves under every root move.
+        if (depth == 0){
+            return new long[0];
+        }
+        int[] moves = new int[AI.MAX_MOVES];
+        int moveNum = rootMoves(board, player, moves);
+        long[] counts = new long[moveNum];
+        int[][] buffers = new int[depth][AI.MAX_MOVES];
+        for (int i = 0; i < moveNum; i++){
+            rootMoves.add(PackedMove.toMove(moves[i], board.geometry));
+            counts[i] = count(board, moves[i], player, depth, buffers);
+        }
+        return counts;
+    }
+
+    private long[] parallelDivide(ChessBoard board, PlayerColor player, int depth, int threadNum, List<Move> rootMoves){
+        /*
+        Count the leaves under every root move, one fork-join task per root move on its own copy of the board.
+        The root moves are few, so the tasks are not split any further.
+         */
+        if (depth == 0){
+            return new long[0];
+        }
+        int[] moves = new int[AI.MAX_MOVES];
+        int moveNum = rootMoves(board, player, moves);
+        List<RecursiveTask<Long>> tasks = new ArrayList<>(moveNum);
+        for (int i = 0; i < moveNum; i++){
+            rootMoves.add(PackedMove.toMove(moves[i], board.geometry));
+            final int move = moves[i];
+            tasks.add(new RecursiveTask<Long>() {
+                @Override
+                protected Long compute() {
+                    return count(new ChessBoard(board), move, player, depth, new int[depth][AI.MAX_MOVES]);
+                }
+            });
+        }
+        ForkJoinPool pool = new ForkJoinPool(threadNum);
+        try {
+            long[] counts = new long[moveNum];
+            for (RecursiveTask<Long> task: tasks){
+                pool.execute(task);
+            }
+            for (int i = 0; i < moveNum; i++){
+                counts[i] = tasks.get(i).join();
+            }
+            return counts;
+        }finally {
+            pool.shutdown();
+        }
+    }
+
+    private int rootMoves(ChessBoard board, PlayerColor player, int[] moves){   //Write the root moves into the buffer, from the generator chosen.
+        if (!slow){
+            return board.generateMoves(player, moves);
+        }
+        int moveNum = 0;
+        for (BoardLocation from: board.getCheckerLocations(player == PLAYER_BK ? Checker.BLACK : Checker.WHITE)){
+            for (int row = 0; row < board.boardSize; row++){
+                for (int column = 0; column < board.boardSize; column++){
+                    Move move = new Move(from, new BoardLocation(row, column));
+                    if ((row != from.getRow() || column != from.getColumn()) && board.moveCheck(move, player)){
+                        moves[moveNum++] = PackedMove.fromMove(move, board);
+                    }
+                }
+            }
+        }
+        return moveNum;
+    }
+
+    private long count(ChessBoard board, int move, PlayerColor player, int depth, int[][] buffers){     //Count the leaves under one root move.
+        if (slow){
+            ChessBoard child = new ChessBoard(board);
+            child.makeMove(PackedMove.toMove(move, board.geometry), player);
+            return slowPerft(child, opponentOf(player), depth - 1);
+        }
+        board.applyMove(move, player);
+        long count = perft(board, opponentOf(player), depth - 1, buffers);
+        board.undoMove();
+        return count;
+    }
+
+    public long perft(ChessBoard board, PlayerColor player, int depth, int[][] buffers){
+        //Count the leaves to the depth with generateMoves. buffers needs a move buffer per depth.
+        if (depth == 0){
+            return 1;
+        }
+        int[] moves = buffers[depth - 1];
+        int moveNum = board.generateMoves(player, moves);
+        if (depth == 1 && bulk){    //The moves of the last ply are leaves, no need to make them.
+            return moveNum;
+        }
+        PlayerColor opponent = opponentOf(player);
+        long count = 0;
+        for (int i = 0; i < moveNum; i++){
+            board.applyMove(moves[i], player);
+            count += perft(board, opponent, depth - 1, buffers);
+            board.undoMove();
+        }
+        return count;
+    }
+
+    public long slowPerft(ChessBoard board, PlayerColor player, int depth){
+        //Count the leaves to the depth by trying every checker of the player against every square with moveCheck.
+        if (depth == 0){
+            return 1;
+        }
+        Checker checker = player == PLAYER_BK ? Checker.BLACK : Checker.WHITE;
+        PlayerColor opponent = opponentOf(player);
+        long count = 0;
+        for (BoardLocation from: board.getCheckerLocations(checker)){
+            for (int row = 0; row < board.boardSize; row++){
+                for (int column = 0; column < board.boardSize; column++){
+                    Move move = new Move(from, new BoardLocation(row, column));
+                    if (row == from.getRow() && column == from.getColumn() || !board.moveCheck(move, player)){
+                        continue;
+                    }
+                    if (depth == 1 && bulk){
+                        count++;
+                    }else{
+                        ChessBoard child = new ChessBoard(board);
+                        child.makeMove(move, player);
+                        count += slowPerft(child, opponent, depth - 1);
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private static PlayerColor opponentOf(PlayerColor player){
+        return player == PLAYER_BK ? PLAYER_WH : PLAYER_BK;
+    }
+}
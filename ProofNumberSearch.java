@@ -0,0 +1,214 @@
+package main;
+
+import java.util.Arrays;
+
+import static main.PlayerColor.PLAYER_BK;
+import static main.PlayerColor.PLAYER_WH;
+
+/**
+ * Depth-first proof-number search (df-pn), solving a position as a win or a loss of the player to move without any
+ * evaluation function. The numbers are kept in the phi/delta form: phi is the proof number of the player to move at a
+ * node and delta its disproof number, so the same code works at the nodes of both players.
+ *
+ * The results are stored in a fixed size hash table, so the memory does not grow with the search, and the search gives
+ * up after a node budget. A position repeated on the current path, or a path longer than MAX_PLY, counts as a failure
+ * of the player trying to win (the attacker). That way a proven win never relies on a repetition, and a loss is
+ * proven by a second search with the opponent as the attacker.
+ */
+public class ProofNumberSearch {
+    public enum Result {
+        WIN,    //The player to move can force a win.
+        LOSS,   //The opponent can force a win.
+        UNKNOWN     //Neither was proven within the budget.
+    }
+
+    public static final int DEFAULT_SIZE = 1 << 16;     //Default number of buckets of the table.
+    public static final int MAX_PLY = 128;  //Deepest path followed.
+    private static final int INFINITY = Integer.MAX_VALUE / 4;
+    private final long[] keys;  //Two entries per bucket, like TranspositionTable.
+    private final int[] phis;
+    private final int[] deltas;
+    private final long[] works;     //Nodes searched under the entry, the entry with less work is replaced first.
+    private final int bucketMask;
+    private final long[] pathKeys = new long[MAX_PLY + 1];  //Keys of the positions on the current path.
+    private final int[][] moveBuffers = new int[MAX_PLY + 1][];     //Moves and child numbers of each ply, created when first reached.
+    private final int[][] phiBuffers = new int[MAX_PLY + 1][];
+    private final int[][] deltaBuffers = new int[MAX_PLY + 1][];
+    private ChessBoard board;
+    private PlayerColor attacker;   //The player trying to win in the running search.
+    private long nodeNum;   //Nodes searched by the last solve.
+    private long nodeLimit;
+    private boolean aborted;
+    private int proofMove = TranspositionTable.NO_MOVE;     //Winning packed move found by the last solve.
+    private int resultPhi;  //Numbers of the node last searched by mid.
+    private int resultDelta;
+
+    public ProofNumberSearch(int size){     //size is the number of buckets, rounded down to a power of 2.
+        int bucketNum = Integer.highestOneBit(Math.max(size, 1));
+        this.keys = new long[bucketNum * 2];
+        this.phis = new int[bucketNum * 2];
+        this.deltas = new int[bucketNum * 2];
+        this.works = new long[bucketNum * 2];
+        this.bucketMask = bucketNum - 1;
+    }
+
+    public Result solve(ChessBoard startBoard, PlayerColor player, long nodeLimit){
+        /*
+        Try to prove a win of the player to move, then a loss, within nodeLimit nodes in total.
+        After a win, getProofMove returns the winning move.
+         */
+        this.board = new ChessBoard(startBoard);
+        this.nodeLimit = nodeLimit;
+        this.nodeNum = 0;
+        this.proofMove = TranspositionTable.NO_MOVE;
+        if (search(player, player) == 0){
+            return Result.WIN;
+        }
+        if (!aborted && search(player, opponentOf(player)) == INFINITY){
+            return Result.LOSS;
+        }
+        return Result.UNKNOWN;
+    }
+
+    private int search(PlayerColor player, PlayerColor attacker){
+        /*
+        Run df-pn from the root, where the player is to move, for the attacker. Return phi of the root, which is 0 or
+        INFINITY when solved. Stopping at the budget leaves the numbers unsolved, so a solved root is always a real result.
+         */
+        this.attacker = attacker;
+        this.aborted = false;
+        clear();    //The entries depend on the attacker, because of how repetitions count.
+        mid(player, 0, INFINITY, INFINITY);
+        return resultPhi;
+    }
+
+    private void mid(PlayerColor player, int ply, int thresholdPhi, int thresholdDelta){
+        /*
+        Search the node, where the player is to move, until its phi or delta reaches the threshold.
+        Its numbers are left in resultPhi and resultDelta, and stored in the table.
+         */
+        long key = board.positionKey(player);
+        nodeNum++;
+        if (nodeNum > nodeLimit){
+            aborted = true;
+        }
+        int[] moves = moveBuffers[ply];
+        if (moves == null){
+            moves = moveBuffers[ply] = new int[AI.MAX_MOVES];
+            phiBuffers[ply] = new int[AI.MAX_MOVES];
+            deltaBuffers[ply] = new int[AI.MAX_MOVES];
+        }
+        int[] childPhis = phiBuffers[ply];
+        int[] childDeltas = deltaBuffers[ply];
+        int moveNum = board.generateMoves(player, moves);
+        PlayerColor opponent = opponentOf(player);
+        pathKeys[ply] = key;
+        for (int i = 0; i < moveNum; i++){  //Find the children already decided or stored.
+            board.applyMove(moves[i], player);
+            long childKey = board.positionKey(opponent);
+            if (board.continuousCheck(player)){     //Like Main, the player who moved wins first, then the opponent.
+                childPhis[i] = INFINITY;
+                childDeltas[i] = 0;
+            }else if (board.continuousCheck(opponent)){
+                childPhis[i] = 0;
+                childDeltas[i] = INFINITY;
+            }else if (onPath(childKey, ply) || ply + 1 >= MAX_PLY){
+                boolean attackerToMove = opponent == attacker;
+                childPhis[i] = attackerToMove ? INFINITY : 0;
+                childDeltas[i] = attackerToMove ? 0 : INFINITY;
+            }else{
+                int index = find(childKey);
+                childPhis[i] = index >= 0 ? phis[index] : 1;
+                childDeltas[i] = index >= 0 ? deltas[index] : 1;
+            }
+            board.undoMove();
+        }
+        long nodeStart = nodeNum;
+        while (true){
+            int phi = INFINITY;     //The smallest delta of the children, moving there wins if the opponent is disproved.
+            int delta = 0;  //The sum of the phis of the children.
+            int best = -1;
+            int secondDelta = INFINITY;
+            for (int i = 0; i < moveNum; i++){
+                delta = Math.min(delta + childPhis[i], INFINITY);
+                if (childDeltas[i] < phi){
+                    secondDelta = phi;
+                    phi = childDeltas[i];
+                    best = i;
+                }else if (childDeltas[i] < secondDelta){
+                    secondDelta = childDeltas[i];
+                }
+            }
+            if (phi == 0 && ply == 0){
+                proofMove = moves[best];
+            }
+            if (phi >= thresholdPhi || delta >= thresholdDelta || aborted){     //No moves at all gives phi INFINITY and delta 0, a loss.
+                store(key, phi, delta, nodeNum - nodeStart);
+                resultPhi = phi;
+                resultDelta = delta;
+                return;
+            }
+            int childThresholdPhi = (int) Math.min((long) thresholdDelta - delta + childPhis[best], INFINITY);
+            int childThresholdDelta = Math.min(thresholdPhi, secondDelta + 1);
+            board.applyMove(moves[best], player);
+            mid(opponent, ply + 1, childThresholdPhi, childThresholdDelta);
+            board.undoMove();
+            childPhis[best] = resultPhi;
+            childDeltas[best] = resultDelta;
+        }
+    }
+
+    private boolean onPath(long key, int ply){  //Whether the position is already on the path from the root to the node at ply.
+        for (int i = ply; i >= 0; i--){
+            if (pathKeys[i] == key){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int find(long key){     //Index of the entry of the key, or -1 if it is not stored.
+        int index = ((int) key & bucketMask) << 1;
+        if (keys[index] == key && works[index] != 0){
+            return index;
+        }
+        if (keys[index + 1] == key && works[index + 1] != 0){
+            return index + 1;
+        }
+        return -1;
+    }
+
+    private void store(long key, int phi, int delta, long work){
+        //Store the numbers of a position, replacing the same position, then an empty entry, then the one with less work.
+        work++;     //An entry with work 0 is empty.
+        int index = find(key);
+        if (index >= 0){
+            work = Math.max(work, works[index]);
+        }else{
+            index = ((int) key & bucketMask) << 1;
+            if (works[index] != 0 && (works[index + 1] == 0 || works[index + 1] < works[index])){
+                index++;
+            }
+        }
+        keys[index] = key;
+        phis[index] = phi;
+        deltas[index] = delta;
+        works[index] = work;
+    }
+
+    public void clear(){    //Forget all the stored positions.
+        Arrays.fill(works, 0);
+    }
+
+    public int getProofMove() {
+        return proofMove;
+    }
+
+    public long getNodeNum() {
+        return nodeNum;
+    }
+
+    private static PlayerColor opponentOf(PlayerColor player){
+        return player == PLAYER_BK ? PLAYER_WH : PLAYER_BK;
+    }
+}
@@ -0,0 +1,47 @@
+package main;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event of one alpha-beta search, recorded with the search metrics when a flight recording is running.
+ * Without a recording, begin and commit cost next to nothing.
+ */
+@Name("main.Search")
+@Label("Search")
+@Category("Line of Actions")
+@Description("One alpha-beta search of the AI")
+public class SearchEvent extends Event {
+    @Label("Completed Depth")
+    int depth;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Nodes per Second")
+    double nodesPerSecond;
+
+    @Label("Effective Branching Factor")
+    double effectiveBranchingFactor;
+
+    @Label("Cutoffs")
+    long cutoffs;
+
+    @Label("First Move Cutoff Rate")
+    double firstMoveCutoffRate;
+
+    @Label("Evaluations")
+    long evaluations;
+
+    @Label("Connectivity Checks")
+    long connectivityChecks;
+
+    @Label("Tablebase Hits")
+    long tablebaseHits;
+
+    @Label("Threads")
+    int threads;
+}
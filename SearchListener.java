@@ -0,0 +1,12 @@
+package main;
+
+import java.util.List;
+
+/**
+ * Told by the AI about the progress of a search, for example to report it to a program driving the engine.
+ * It is called on the search thread, so it should return quickly.
+ */
+public interface SearchListener {
+    void iterationCompleted(int depth, float value, List<Move> principalVariation, long nodeNum, long time);
+    //The principal variation starts with the best move, time is in ms from the start of the search.
+}
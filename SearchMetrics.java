@@ -0,0 +1,182 @@
+package main;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Counters of one search. Each worker writes only its own stripe, so counting needs no locks or atomic updates, and the
+ * totals can be read from another thread while the search runs. The writes are opaque, so a reader sees every count
+ * whole, only maybe a little late.
+ *
+ * A search without metrics has no SearchMetrics at all, and the workers skip the counting with a null check.
+ */
+public class SearchMetrics {
+    public enum Counter {
+        MAX_EVALUATIONS,    //Evaluation function calls in maxValue.
+        MIN_EVALUATIONS,    //Evaluation function calls in minValue.
+        MAX_CUTOFFS,    //Prunings in maxValue.
+        MIN_CUTOFFS,    //Prunings in minValue.
+        MAX_FIRST_MOVE_CUTOFFS,     //Prunings caused by the first move searched in maxValue.
+        MIN_FIRST_MOVE_CUTOFFS,     //Prunings caused by the first move searched in minValue.
+        CONNECTIVITY_CHECKS,    //Calls of ChessBoard.continuousCheck.
+        TABLEBASE_HITS  //Positions found in the tablebase.
+    }
+
+    private static final VarHandle COUNTS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final int COUNTER_NUM = Counter.values().length;
+
+    public static final class Stripe {  //The counters of one worker, only written by its thread.
+        private final long[] counts = new long[COUNTER_NUM];
+        private final long[] depthNodes;    //Nodes searched at each depth from the root.
+        private final long[] iterationNodes;    //Nodes searched by the worker until the end of each completed iteration, 0 for the others.
+
+        private Stripe(int limit){
+            this.depthNodes = new long[limit + 1];
+            this.iterationNodes = new long[limit + 1];
+        }
+
+        public void add(Counter counter){
+            int i = counter.ordinal();
+            COUNTS.setOpaque(counts, i, counts[i] + 1);
+        }
+
+        public void add(Counter counter, long num){
+            int i = counter.ordinal();
+            COUNTS.setOpaque(counts, i, counts[i] + num);
+        }
+
+        public void addNode(int depth){
+            COUNTS.setOpaque(depthNodes, depth, depthNodes[depth] + 1);
+        }
+
+        public void iterationCompleted(int depth){  //Called by the worker after each completed iteration.
+            long sum = 0;
+            for (long nodes: depthNodes){
+                sum += nodes;
+            }
+            COUNTS.setOpaque(iterationNodes, depth, sum);
+        }
+    }
+
+    private final Stripe[] stripes;
+    private final long startTime;   //System.nanoTime at the start of the search.
+    private volatile long endTime = 0;  //System.nanoTime at the end of the search, 0 while it runs.
+    private volatile int completedDepth = 0;    //Deepest iteration completed by any worker.
+
+    public SearchMetrics(int threadNum, int limit){
+        this.stripes = new Stripe[threadNum];
+        for (int i = 0; i < threadNum; i++){
+            stripes[i] = new Stripe(limit);
+        }
+        this.startTime = System.nanoTime();
+    }
+
+    public Stripe stripe(int workerId){
+        return stripes[workerId];
+    }
+
+    public void depthCompleted(int depth){  //Called by the workers after each completed iteration.
+        synchronized (this){
+            if (depth > completedDepth){
+                completedDepth = depth;
+            }
+        }
+    }
+
+    public void searchFinished(){
+        endTime = System.nanoTime();
+    }
+
+    public long get(Counter counter){   //Sum of the counter over the workers.
+        long sum = 0;
+        for (Stripe stripe: stripes){
+            sum += (long) COUNTS.getOpaque(stripe.counts, counter.ordinal());
+        }
+        return sum;
+    }
+
+    public int getMaxDepth(){   //Deepest depth from the root any node was searched at, -1 before the first node.
+        for (int depth = stripes[0].depthNodes.length - 1; depth >= 0; depth--){
+            if (getDepthNodes(depth) > 0){
+                return depth;
+            }
+        }
+        return -1;
+    }
+
+    public long getDepthNodes(int depth){   //Nodes searched at the depth from the root, over the workers and iterations.
+        long sum = 0;
+        for (Stripe stripe: stripes){
+            sum += (long) COUNTS.getOpaque(stripe.depthNodes, depth);
+        }
+        return sum;
+    }
+
+    public long getNodeNum(){
+        long sum = 0;
+        for (int depth = 0; depth < stripes[0].depthNodes.length; depth++){
+            sum += getDepthNodes(depth);
+        }
+        return sum;
+    }
+
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    public long getElapsedNanos(){  //Time of the search so far, or of the whole search once it finished.
+        long end = endTime;
+        return (end != 0 ? end : System.nanoTime()) - startTime;
+    }
+
+    public double getNodesPerSecond(){
+        long elapsed = getElapsedNanos();
+        return elapsed == 0 ? 0 : getNodeNum() * 1e9 / elapsed;
+    }
+
+    public double getEffectiveBranchingFactor(){
+        /*
+        How much the search grows with one more ply: the nodes of the last iteration the main worker completed over the
+        nodes of the iteration before. The helpers are left out, so the value does not change with the number of threads.
+        0 until the main worker completed two iterations.
+         */
+        long[] iterationNodes = stripes[0].iterationNodes;
+        for (int depth = iterationNodes.length - 1; depth >= 2; depth--){
+            long total = (long) COUNTS.getOpaque(iterationNodes, depth);
+            if (total != 0){
+                long before = (long) COUNTS.getOpaque(iterationNodes, depth - 1);
+                long last = total - before;
+                before -= (long) COUNTS.getOpaque(iterationNodes, depth - 2);
+                return before <= 0 ? 0 : (double) last / before;
+            }
+        }
+        return 0;
+    }
+
+    public double getFirstMoveCutoffRate(){     //Share of the prunings caused by the first move searched, the higher the better the move ordering.
+        long cutoffs = get(Counter.MAX_CUTOFFS) + get(Counter.MIN_CUTOFFS);
+        long firstMove = get(Counter.MAX_FIRST_MOVE_CUTOFFS) + get(Counter.MIN_FIRST_MOVE_CUTOFFS);
+        return cutoffs == 0 ? 0 : (double) firstMove / cutoffs;
+    }
+
+    public long getEvaluationNum(){
+        return get(Counter.MAX_EVALUATIONS) + get(Counter.MIN_EVALUATIONS);
+    }
+
+    public void commitEvent(SearchEvent event, int threadNum){  //Fill the JFR event of the search and commit it.
+        if (!event.shouldCommit()){
+            return;
+        }
+        event.depth = completedDepth;
+        event.nodes = getNodeNum();
+        event.nodesPerSecond = getNodesPerSecond();
+        event.effectiveBranchingFactor = getEffectiveBranchingFactor();
+        event.cutoffs = get(Counter.MAX_CUTOFFS) + get(Counter.MIN_CUTOFFS);
+        event.firstMoveCutoffRate = getFirstMoveCutoffRate();
+        event.evaluations = getEvaluationNum();
+        event.connectivityChecks = get(Counter.CONNECTIVITY_CHECKS);
+        event.tablebaseHits = get(Counter.TABLEBASE_HITS);
+        event.threads = threadNum;
+        event.commit();
+    }
+}
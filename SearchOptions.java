@@ -0,0 +1,154 @@
+package main;
+
+/**
+ * Switches and parameters of the selective search of the alpha-beta workers. Every worker takes a copy when a search
+ * starts, so changing the options never affects a running search.
+ *
+ * Null-move pruning lets the side to move pass: if a search reduced by the null-move reduction still fails high, the
+ * node is pruned. When either side is close to connecting, a pass can miss the one move that stops the connection,
+ * so a cutoff there is verified by a normal search of the same reduced depth.
+ * Late-move reductions search the quiet moves ordered late at a smaller depth, and only search them again at the full
+ * depth when they turn out better than expected.
+ * Principal variation search gives the full window only to the first move of a node and probes the others with a null
+ * window, searching them again only when the probe fails high. Aspiration windows start each iteration with a window
+ * around the value of the previous one instead of the full range.
+ */
+public class SearchOptions {
+    private boolean nullMove = true;
+    private int nullMoveReduction = 2;  //Depth the null-move search is reduced by, on top of the ply of the pass.
+    private int nullMoveMinDepth = 3;   //Depth left a node needs to try the null move.
+    private int threatCheckers = 1;     //A side is close to connecting when at most this many checkers are outside its largest group.
+    private boolean lateMoveReductions = true;
+    private int reductionFirstMove = 3;     //Index of the first move that may be reduced, the ones before are searched at full depth.
+    private int reductionMinDepth = 3;  //Depth left a node needs to reduce its moves.
+    private int reduction = 1;  //Depth a late move is reduced by.
+    private boolean principalVariation = true;
+    private boolean aspiration = true;
+    private float aspirationWindow = 50;    //Half width of the first aspiration window, doubled after each failure.
+
+    public SearchOptions(){
+    }
+
+    public SearchOptions(SearchOptions options){    //A copy of the options.
+        this.nullMove = options.nullMove;
+        this.nullMoveReduction = options.nullMoveReduction;
+        this.nullMoveMinDepth = options.nullMoveMinDepth;
+        this.threatCheckers = options.threatCheckers;
+        this.lateMoveReductions = options.lateMoveReductions;
+        this.reductionFirstMove = options.reductionFirstMove;
+        this.reductionMinDepth = options.reductionMinDepth;
+        this.reduction = options.reduction;
+        this.principalVariation = options.principalVariation;
+        this.aspiration = options.aspiration;
+        this.aspirationWindow = options.aspirationWindow;
+    }
+
+    public boolean isNullMove() {
+        return nullMove;
+    }
+
+    public void setNullMove(boolean nullMove){  //Turn null-move pruning on or off.
+        this.nullMove = nullMove;
+    }
+
+    public int getNullMoveReduction() {
+        return nullMoveReduction;
+    }
+
+    public void setNullMoveReduction(int nullMoveReduction){
+        if (nullMoveReduction < 1){
+            throw new IllegalArgumentException("Illegal null-move reduction!");
+        }
+        this.nullMoveReduction = nullMoveReduction;
+    }
+
+    public int getNullMoveMinDepth() {
+        return nullMoveMinDepth;
+    }
+
+    public void setNullMoveMinDepth(int nullMoveMinDepth){
+        if (nullMoveMinDepth < 1){
+            throw new IllegalArgumentException("Illegal null-move depth!");
+        }
+        this.nullMoveMinDepth = nullMoveMinDepth;
+    }
+
+    public int getThreatCheckers() {
+        return threatCheckers;
+    }
+
+    public void setThreatCheckers(int threatCheckers){  //Set how close to connecting a side must be for the null-move cutoffs to be verified, -1 never verifies.
+        if (threatCheckers < -1){
+            throw new IllegalArgumentException("Illegal number of checkers!");
+        }
+        this.threatCheckers = threatCheckers;
+    }
+
+    public boolean isLateMoveReductions() {
+        return lateMoveReductions;
+    }
+
+    public void setLateMoveReductions(boolean lateMoveReductions){  //Turn late-move reductions on or off.
+        this.lateMoveReductions = lateMoveReductions;
+    }
+
+    public int getReductionFirstMove() {
+        return reductionFirstMove;
+    }
+
+    public void setReductionFirstMove(int reductionFirstMove){
+        if (reductionFirstMove < 1){
+            throw new IllegalArgumentException("Illegal move index!");
+        }
+        this.reductionFirstMove = reductionFirstMove;
+    }
+
+    public int getReductionMinDepth() {
+        return reductionMinDepth;
+    }
+
+    public void setReductionMinDepth(int reductionMinDepth){
+        if (reductionMinDepth < 2){
+            throw new IllegalArgumentException("Illegal reduction depth!");
+        }
+        this.reductionMinDepth = reductionMinDepth;
+    }
+
+    public int getReduction() {
+        return reduction;
+    }
+
+    public void setReduction(int reduction){
+        if (reduction < 1){
+            throw new IllegalArgumentException("Illegal reduction!");
+        }
+        this.reduction = reduction;
+    }
+
+    public boolean isPrincipalVariation() {
+        return principalVariation;
+    }
+
+    public void setPrincipalVariation(boolean principalVariation){  //Turn principal variation search on or off.
+        this.principalVariation = principalVariation;
+    }
+
+    public boolean isAspiration() {
+        return aspiration;
+    }
+
+    public void setAspiration(boolean aspiration){  //Turn aspiration windows on or off.
+        this.aspiration = aspiration;
+    }
+
+    public float getAspirationWindow() {
+        return aspirationWindow;
+    }
+
+    public void setAspirationWindow(float aspirationWindow){
+        if (!(aspirationWindow > 0)){
+            throw new IllegalArgumentException("Illegal aspiration window!");
+        }
+        this.aspirationWindow = aspirationWindow;
+    }
+}
@@ -0,0 +1,487 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * One thread of the search. Every worker searches the root with iterative deepening on its own copy of the board,
+ * and they share the transposition table of the AI. Helper workers start at staggered depths, so they fill the table
+ * with results the other workers will need (Lazy SMP).
+ */
+public class SearchWorker implements Runnable {
+    private final AI ai;
+    private final int id;   //0 for the main worker, 1,2,... for the helpers.
+    private final ChessBoard board;     //The search makes and takes back moves on its own copy of the board.
+    private final TranspositionTable transpositionTable;
+    private final Tablebase tablebase;  //Exact results of the endgames, null if there is none.
+    private final PlayerColor computer;
+    private final PlayerColor human;
+    private final int limit;    //Deepest depth the search will go.
+    private final long time;    //Start time of the search.
+    private final long nodeLimit;   //Nodes this worker may search before it stops.
+    private final SearchOptions options;    //Selective search options, copied when the search starts.
+    private int rootBestMove;  // Best packed move found at the root by the current iteration.
+    private boolean aborted = false;    //Set when the search is stopped during an iteration.
+    private int bestMove = TranspositionTable.NO_MOVE;   //Best packed move of the last completed iteration.
+    private int[] principalVariation = new int[0];  //Packed moves of the principal variation of the last completed iteration.
+    private float bestValue = 0;    //Value of the last completed iteration.
+    private int finalDepth = 0;     // Store the depth of the last iteration completed.
+    private final long[] depthTimes;    //Time from the start of the search to the end of each completed iteration.
+    private long nodeNum = 0;    //Store the number of node discovered.
+    private final SearchMetrics searchMetrics;  //Metrics of the search, null when they are off.
+    private final SearchMetrics.Stripe metrics;     //Counters of this worker in the metrics, null when they are off.
+    /*
+    Move ordering. Killers are the two latest non-capture moves that caused a pruning at each ply.
+    The history table scores each non-capture move by the pruning it caused, indexed by the packed move (from and to square).
+     */
+    private final int[][] killers;
+    private final int[] history;
+    private final int[][] moveBuffers;  //Moves of the node at each ply, generated in place.
+    private final int[][] scoreBuffers; //Ordering scores of the moves at each ply.
+    /*
+    Triangular table of the principal variations: row ply holds the best line found from the node at that ply, in
+    columns ply to pvLengths[ply]-1. A node that improves its window puts its move in front of the line of its child.
+     */
+    private final int[][] pvTable;
+    private final int[] pvLengths;
+
+    public SearchWorker(AI ai, int id, ChessBoard startBoard, TranspositionTable transpositionTable,
+                        PlayerColor computer, PlayerColor human, int limit, long time, int[] history,
+                        SearchMetrics searchMetrics){
+        this.ai = ai;
+        this.id = id;
+        this.board = new ChessBoard(startBoard);
+        this.transpositionTable = transpositionTable;
+        this.tablebase = ai.getTablebase();
+        this.computer = computer;
+        this.human = human;
+        this.limit = limit;
+        this.time = time;
+        this.nodeLimit = ai.getWorkerNodeLimit();
+        this.depthTimes = new long[limit + 1];
+        Arrays.fill(depthTimes, -1);
+        this.killers = new int[limit + 1][2];
+        this.history = history;
+        this.moveBuffers = new int[limit + 1][AI.MAX_MOVES];
+        this.scoreBuffers = new int[limit + 1][AI.MAX_MOVES];
+        this.pvTable = new int[limit + 2][limit + 2];
+        this.pvLengths = new int[limit + 2];
+        this.options = new SearchOptions(ai.getSearchOptions());
+        this.searchMetrics = searchMetrics;
+        this.metrics = searchMetrics == null ? null : searchMetrics.stripe(id);
+    }
+
+    @Override
+    public void run(){
+        /*
+        Search to depth 1, 2, ... up to the limit. The helpers with an odd id start one depth deeper.
+        When the search is stopped, the unfinished iteration is thrown away. When a worker completes the limit
+        or finds the game result, it stops the other workers.
+         */
+        for (int depth = 1 + id % 2; depth <= limit; depth++){
+            float iterationValue = aspirationSearch(depth);
+            if (aborted){
+                if (bestMove == TranspositionTable.NO_MOVE){  //Not even the first iteration finished, keep the best move found so far.
+                    bestMove = rootBestMove;
+                    bestValue = iterationValue;
+                }
+                return;
+            }
+            bestMove = rootBestMove;
+            bestValue = iterationValue;
+            principalVariation = pvLengths[0] > 0 && pvTable[0][0] == rootBestMove
+                    ? Arrays.copyOf(pvTable[0], pvLengths[0]) : new int[]{rootBestMove};
+            finalDepth = depth;
+            depthTimes[depth] = System.currentTimeMillis() - time;
+            if (searchMetrics != null){
+                searchMetrics.depthCompleted(depth);
+                metrics.iterationCompleted(depth);
+            }
+            if (id == 0){   //The main worker reports its iterations.
+                ai.iterationCompleted(depth, bestValue, principalVariation, board.geometry, depthTimes[depth]);
+            }
+            if (bestValue == AI.MAX || bestValue == AI.MIN){  //The game result is already decided, searching deeper won't change it.
+                break;
+            }
+        }
+        ai.stopSearch();
+    }
+
+    private float aspirationSearch(int depth){
+        /*
+        Search the root to the depth. With aspiration windows, once an earlier iteration gave a value the window starts
+        around it. When the value falls outside, the window is widened on that side, twice as much each time, and the
+        root is searched again.
+         */
+        float alpha = AI.MIN;
+        float beta = AI.MAX;
+        float window = options.getAspirationWindow();
+        if (options.isAspiration() && bestMove != TranspositionTable.NO_MOVE && bestValue > AI.MIN && bestValue < AI.MAX){
+            alpha = Math.max(AI.MIN, bestValue - window);
+            beta = Math.min(AI.MAX, bestValue + window);
+        }
+        while (true){
+            rootBestMove = TranspositionTable.NO_MOVE;
+            float value = maxValue(board, alpha, beta, 0, depth, true);
+            if (aborted){
+                return value;
+            }
+            if (value <= alpha && alpha > AI.MIN){
+                window *= 2;
+                alpha = Math.max(AI.MIN, value - window);
+            }else if (value >= beta && beta < AI.MAX){
+                window *= 2;
+                beta = Math.min(AI.MAX, value + window);
+            }else{
+                return value;
+            }
+        }
+    }
+
+    private boolean searchStopped(){    //Check the time, the nodes and whether the search was stopped. Stop all the workers when the time is out.
+        if (!aborted && (ai.isStopped() || nodeNum > nodeLimit || System.currentTimeMillis() > ai.getDeadline())){
+            ai.stopSearch();
+            aborted = true;
+        }
+        return aborted;
+    }
+
+    public float maxValue(ChessBoard currentBoard, float alpha, float beta, int ply, int depthLeft, boolean nullAllowed){
+        /*
+        The node of the computer's turn, ply moves from the root with depthLeft to search. Reductions make the depth left
+        shrink faster than the ply grows. nullAllowed is false right after a null move, so no side passes twice in a row.
+         */
+        nodeNum++;  //Each time called means one more node discovered.
+        pvLengths[ply] = ply;   //No line yet.
+        if (metrics != null){
+            metrics.addNode(ply);
+        }
+        if (connected(currentBoard, computer)){    //If one of the side wins, return the utility value.
+                return AI.MAX;}
+        else if (connected(currentBoard, human)){
+                return AI.MIN;
+            }
+        if (searchStopped()){   //If time out or another worker finished, stop searching. The value of an unfinished iteration is not used.
+            return 0;
+        }
+        if (tablebase != null && ply > 0){    //An endgame in the tablebase has an exact value, no need to search it. The root is always searched.
+            int result = tablebase.probe(currentBoard, computer);
+            if (result != Tablebase.NOT_FOUND){
+                if (metrics != null){
+                    metrics.add(SearchMetrics.Counter.TABLEBASE_HITS);
+                }
+                return Tablebase.isWin(result) ? AI.MAX : Tablebase.isLoss(result) ? AI.MIN : 0;
+            }
+        }
+        if (depthLeft <= 0){   //If depth limit reached, return the evaluation value.
+            if (metrics != null){   //One more evaluation function call in maxValue.
+                metrics.add(SearchMetrics.Counter.MAX_EVALUATIONS);
+            }
+            return ai.evaluationFunc(currentBoard);
+        }
+        long key = currentBoard.positionKey(computer);
+        long entry = transpositionTable.probe(key);
+        if (entry != 0 && ply > 0 && TranspositionTable.depthOf(entry) >= depthLeft){   //The stored result is deep enough to be used. The root is always searched.
+            float score = TranspositionTable.scoreOf(entry);
+            int bound = TranspositionTable.boundOf(entry);
+            if (bound == TranspositionTable.EXACT || (bound == TranspositionTable.LOWER_BOUND && score >= beta)
+                    || (bound == TranspositionTable.UPPER_BOUND && score <= alpha)){
+                return score;
+            }
+        }
+        if (nullAllowed && tryNullMove(ply, depthLeft) && beta < AI.MAX && ai.evaluationFunc(currentBoard) >= beta){
+            /*
+            Null move: the human moves twice. If the computer still gets beta, a real move will do at least as well.
+            Near a connection the pass may miss the only move that matters, so the cutoff is checked by a normal search.
+             */
+            int nullDepth = depthLeft - 1 - options.getNullMoveReduction();
+            float nullValue = minValue(currentBoard, Math.nextDown(beta), beta, ply + 1, nullDepth, false);
+            if (aborted){
+                return 0;
+            }
+            if (nullValue >= beta && (!nearConnection(currentBoard)
+                    || maxValue(currentBoard, Math.nextDown(beta), beta, ply, nullDepth + 1, false) >= beta)){
+                return aborted ? 0 : beta;
+            }
+        }
+        float alphaOrigin = alpha;
+        int bestMove = TranspositionTable.NO_MOVE;
+        float value = AI.MIN;
+        int[] moves = moveBuffers[ply];
+        int moveNum = currentBoard.generateMoves(computer, moves);
+        orderMoves(moves, moveNum, entry != 0 ? TranspositionTable.moveOf(entry) : TranspositionTable.NO_MOVE, ply);
+        for (int i = 0; i < moveNum; i++){     //Take each move on the board and take it back after searching.
+            int packedMove = moves[i];
+            currentBoard.applyMove(packedMove, computer);
+            float childValue;
+            if (i == 0){    //The first move, the expected best one, gets the full window.
+                childValue = minValue(currentBoard, alpha, beta, ply+1, depthLeft-1, true);
+            }else{
+                /*
+                With principal variation search, the other moves are only probed with a null window, to prove they are not
+                better than alpha. A late move may be probed at a reduced depth first.
+                 */
+                float probeBeta = options.isPrincipalVariation() ? Math.nextUp(alpha) : beta;
+                int reduction = reduceMove(packedMove, i, ply, depthLeft) ? options.getReduction() : 0;
+                childValue = minValue(currentBoard, alpha, probeBeta, ply+1, depthLeft-1-reduction, true);
+                if (reduction > 0 && childValue > alpha && !aborted){    //Better than expected, search it again at the full depth.
+                    childValue = minValue(currentBoard, alpha, probeBeta, ply+1, depthLeft-1, true);
+                }
+                if (probeBeta != beta && childValue > alpha && childValue < beta && !aborted){    //The probe failed high, search it again with the full window.
+                    childValue = minValue(currentBoard, alpha, beta, ply+1, depthLeft-1, true);
+                }
+            }
+            currentBoard.undoMove();
+            if (aborted){
+                return 0;
+            }
+            if (childValue > value || bestMove == TranspositionTable.NO_MOVE){
+                bestMove = packedMove;
+                if (ply == 0){    //If the ply is 0(the move is took on the origin board), save the move.
+                    rootBestMove = packedMove;
+                }
+            }
+            if (childValue > alpha){
+                updatePrincipalVariation(ply, packedMove);
+            }
+            value = Math.max(value, childValue);
+            if (value >= beta){ // If the value >= beta, pruning.
+                if (metrics != null){
+                    metrics.add(SearchMetrics.Counter.MAX_CUTOFFS);
+                    if (i == 0){
+                        metrics.add(SearchMetrics.Counter.MAX_FIRST_MOVE_CUTOFFS);
+                    }
+                }
+                if (!PackedMove.isCapture(packedMove)){
+                    rememberPruningMove(packedMove, ply, depthLeft);
+                }
+                storeResult(key, depthLeft, alphaOrigin, beta, value, bestMove);
+                return value;
+            }
+            alpha = Math.max(alpha, value);
+        }
+        storeResult(key, depthLeft, alphaOrigin, beta, value, bestMove);
+        return value;
+    }
+
+    public float minValue(ChessBoard currentBoard, float alpha, float beta, int ply, int depthLeft, boolean nullAllowed){    //Logic is same as the maxValue function.
+        nodeNum++;
+        pvLengths[ply] = ply;
+        if (metrics != null){
+            metrics.addNode(ply);
+        }
+        if (connected(currentBoard, computer)){
+            //if (player.equals(PLAYER_BK)){
+                return AI.MAX;
+            }
+        else if(connected(currentBoard, human)){
+                return AI.MIN;
+            }
+        if (searchStopped()){
+            return 0;
+        }
+        if (tablebase != null){
+            int result = tablebase.probe(currentBoard, human);
+            if (result != Tablebase.NOT_FOUND){
+                if (metrics != null){
+                    metrics.add(SearchMetrics.Counter.TABLEBASE_HITS);
+                }
+                return Tablebase.isWin(result) ? AI.MIN : Tablebase.isLoss(result) ? AI.MAX : 0;
+            }
+        }
+        if (depthLeft <= 0){
+            if (metrics != null){
+                metrics.add(SearchMetrics.Counter.MIN_EVALUATIONS);
+            }
+            return ai.evaluationFunc(currentBoard);
+        }
+        long key = currentBoard.positionKey(human);
+        long entry = transpositionTable.probe(key);
+        if (entry != 0 && TranspositionTable.depthOf(entry) >= depthLeft){
+            float score = TranspositionTable.scoreOf(entry);
+            int bound = TranspositionTable.boundOf(entry);
+            if (bound == TranspositionTable.EXACT || (bound == TranspositionTable.LOWER_BOUND && score >= beta)
+                    || (bound == TranspositionTable.UPPER_BOUND && score <= alpha)){
+                return score;
+            }
+        }
+        if (nullAllowed && tryNullMove(ply, depthLeft) && alpha > AI.MIN && ai.evaluationFunc(currentBoard) <= alpha){
+            int nullDepth = depthLeft - 1 - options.getNullMoveReduction();
+            float nullValue = maxValue(currentBoard, alpha, Math.nextUp(alpha), ply + 1, nullDepth, false);
+            if (aborted){
+                return 0;
+            }
+            if (nullValue <= alpha && (!nearConnection(currentBoard)
+                    || minValue(currentBoard, alpha, Math.nextUp(alpha), ply, nullDepth + 1, false) <= alpha)){
+                return aborted ? 0 : alpha;
+            }
+        }
+        float betaOrigin = beta;
+        int bestMove = TranspositionTable.NO_MOVE;
+        float value = AI.MAX;
+        int[] moves = moveBuffers[ply];
+        int moveNum = currentBoard.generateMoves(human, moves);
+        orderMoves(moves, moveNum, entry != 0 ? TranspositionTable.moveOf(entry) : TranspositionTable.NO_MOVE, ply);
+        for (int i = 0; i < moveNum; i++){     //Take each move on the board and take it back after searching.
+            int packedMove = moves[i];
+            currentBoard.applyMove(packedMove, human);
+            float childValue;
+            if (i == 0){
+                childValue = maxValue(currentBoard, alpha, beta, ply+1, depthLeft-1, true);
+            }else{
+                float probeAlpha = options.isPrincipalVariation() ? Math.nextDown(beta) : alpha;
+                int reduction = reduceMove(packedMove, i, ply, depthLeft) ? options.getReduction() : 0;
+                childValue = maxValue(currentBoard, probeAlpha, beta, ply+1, depthLeft-1-reduction, true);
+                if (reduction > 0 && childValue < beta && !aborted){
+                    childValue = maxValue(currentBoard, probeAlpha, beta, ply+1, depthLeft-1, true);
+                }
+                if (probeAlpha != alpha && childValue < beta && childValue > alpha && !aborted){
+                    childValue = maxValue(currentBoard, alpha, beta, ply+1, depthLeft-1, true);
+                }
+            }
+            currentBoard.undoMove();
+            if (aborted){
+                return 0;
+            }
+            if (childValue < value || bestMove == TranspositionTable.NO_MOVE){
+                bestMove = packedMove;
+            }
+            if (childValue < beta){
+                updatePrincipalVariation(ply, packedMove);
+            }
+            value = Math.min(value, childValue);
+            if (value <= alpha){
+                if (metrics != null){
+                    metrics.add(SearchMetrics.Counter.MIN_CUTOFFS);
+                    if (i == 0){
+                        metrics.add(SearchMetrics.Counter.MIN_FIRST_MOVE_CUTOFFS);
+                    }
+                }
+                if (!PackedMove.isCapture(packedMove)){
+                    rememberPruningMove(packedMove, ply, depthLeft);
+                }
+                storeResult(key, depthLeft, alpha, betaOrigin, value, bestMove);
+                return value;
+            }
+            beta = Math.min(beta, value);
+        }
+        storeResult(key, depthLeft, alpha, betaOrigin, value, bestMove);
+        return value;
+    }
+
+    private void updatePrincipalVariation(int ply, int packedMove){     //The line of the node becomes the move followed by the line of its child.
+        int[] line = pvTable[ply];
+        line[ply] = packedMove;
+        int end = pvLengths[ply + 1];
+        System.arraycopy(pvTable[ply + 1], ply + 1, line, ply + 1, end - (ply + 1));
+        pvLengths[ply] = end;
+    }
+
+    private boolean tryNullMove(int ply, int depthLeft){    //Whether the options allow a null move at this node. Never at the root, which must find a move.
+        return options.isNullMove() && ply > 0 && depthLeft >= options.getNullMoveMinDepth();
+    }
+
+    private boolean nearConnection(ChessBoard currentBoard){    //Whether a side has few enough checkers outside its largest group to be close to connecting.
+        int threat = options.getThreatCheckers();
+        return threat >= 0 && (currentBoard.getCheckerNum(computer) - currentBoard.largestGroupSize(computer) <= threat
+                || currentBoard.getCheckerNum(human) - currentBoard.largestGroupSize(human) <= threat);
+    }
+
+    private boolean reduceMove(int packedMove, int index, int ply, int depthLeft){
+        //Whether a move is searched at a reduced depth first: a quiet move, not a killer, ordered late in a node deep enough.
+        return options.isLateMoveReductions() && ply > 0 && index >= options.getReductionFirstMove()
+                && depthLeft >= options.getReductionMinDepth() && !PackedMove.isCapture(packedMove)
+                && packedMove != killers[ply][0] && packedMove != killers[ply][1];
+    }
+
+    private boolean connected(ChessBoard currentBoard, PlayerColor player){     //ChessBoard.continuousCheck, counted by the metrics.
+        if (metrics != null){
+            metrics.add(SearchMetrics.Counter.CONNECTIVITY_CHECKS);
+        }
+        return currentBoard.continuousCheck(player);
+    }
+
+    private void orderMoves(int[] moves, int moveNum, int hashMove, int ply){
+        /*
+        Sort the moves so the ones most likely to cause a pruning are searched first: the best move stored in the
+        transposition table, then the captures, then the two killers of this ply, then the others by their history score.
+         */
+        int[] scores = scoreBuffers[ply];
+        for (int i = 0; i < moveNum; i++){
+            int move = moves[i];
+            int score = Math.min(history[move & PackedMove.SQUARES_MASK], (1 << 28) - 1);
+            if (hashMove != TranspositionTable.NO_MOVE && PackedMove.sameSquares(move, hashMove)){
+                score = Integer.MAX_VALUE;
+            }else if (PackedMove.isCapture(move)){
+                score += 1 << 30;
+            }else if (move == killers[ply][0]){
+                score = (1 << 29) + 1;
+            }else if (move == killers[ply][1]){
+                score = 1 << 29;
+            }
+            scores[i] = score;
+        }
+        for (int i = 1; i < moveNum; i++){     //Insertion sort, stable so equal moves keep the generation order.
+            int move = moves[i];
+            int score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score){
+                scores[j + 1] = scores[j];
+                moves[j + 1] = moves[j];
+                j--;
+            }
+            scores[j + 1] = score;
+            moves[j + 1] = move;
+        }
+    }
+
+    private void rememberPruningMove(int packedMove, int ply, int depthLeft){    //Update the killers and the history table with a non-capture move that caused a pruning.
+        if (killers[ply][0] != packedMove){
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = packedMove;
+        }
+        history[packedMove & PackedMove.SQUARES_MASK] += depthLeft * depthLeft;
+    }
+
+    private void storeResult(long key, int depthLeft, float alpha, float beta, float value, int bestMove){
+        /*
+        Save the value of a node into the transposition table, with the bound type decided by the window it was searched with.
+         */
+        int bound;
+        if (value <= alpha){
+            bound = TranspositionTable.UPPER_BOUND;
+        }else if (value >= beta){
+            bound = TranspositionTable.LOWER_BOUND;
+        }else{
+            bound = TranspositionTable.EXACT;
+        }
+        transpositionTable.store(key, depthLeft, bound, value, bestMove);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getBestMove() {  //Best packed move of the last completed iteration, TranspositionTable.NO_MOVE if there is none.
+        return bestMove;
+    }
+
+    public int[] getPrincipalVariation() {  //Packed moves of the principal variation of the last completed iteration, empty if there is none.
+        return principalVariation;
+    }
+
+    public float getBestValue() {
+        return bestValue;
+    }
+
+    public int getFinalDepth() {
+        return finalDepth;
+    }
+
+    public long getDepthTime(int depth) {   //Time to complete the given depth, -1 if it was not completed.
+        return depthTimes[depth];
+    }
+
+    public long getNodeNum() {
+        return nodeNum;
+    }
+}
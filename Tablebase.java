@@ -0,0 +1,201 @@
+package main;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static main.PlayerColor.PLAYER_BK;
+
+/**
+ * Endgame tablebase of the 5*5 board: the exact result of every position with at most maxPieces checkers in total,
+ * written by TablebaseGenerator and read from a memory-mapped file.
+ *
+ * The positions are grouped in classes by the number of black and white checkers, in the order of the total and then
+ * of the black checkers. Inside a class, a position is indexed by the rank of the black squares among all the squares,
+ * then the rank of the white squares among the squares left, then the player to move. A rank is the position of the set
+ * in the colexicographic order, so the index is dense and the file holds one byte per position:
+ * 0 is a draw, v > 0 a win of the player to move in v - 1 plies and v < 0 a loss in -v - 1 plies.
+ * Like Main, a player whose opponent just connected has lost, even if both are connected.
+ */
+public class Tablebase {
+    public static final int BOARD_SIZE = 5;
+    public static final int SQUARE_NUM = BOARD_SIZE * BOARD_SIZE;
+    public static final int MAX_PIECES = 7;     //More checkers don't fit in an int index.
+    public static final String DEFAULT_FILE = "tablebase5.bin";
+    public static final int MAGIC = 0x4C4F4154;     //"LOAT" at the start of the file.
+    public static final int HEADER_SIZE = 12;   //Magic, board size and maxPieces.
+    public static final int NOT_FOUND = Integer.MIN_VALUE;  //Returned by probe for a position not in the table.
+    private static final int[][] BINOMIAL = new int[SQUARE_NUM + 1][SQUARE_NUM + 1];
+    private static Tablebase defaultTablebase;
+    private static boolean defaultLoaded = false;
+    private final MappedByteBuffer buffer;
+    private final int maxPieces;
+    private final int[][] classOffsets;
+
+    static {
+        for (int n = 0; n <= SQUARE_NUM; n++){
+            BINOMIAL[n][0] = 1;
+            for (int k = 1; k <= n; k++){
+                BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1] + (k <= n - 1 ? BINOMIAL[n - 1][k] : 0);
+            }
+        }
+    }
+
+    private Tablebase(MappedByteBuffer buffer, int maxPieces){
+        this.buffer = buffer;
+        this.maxPieces = maxPieces;
+        this.classOffsets = classOffsets(maxPieces);
+    }
+
+    public static Tablebase open(Path file) throws IOException {    //Map a tablebase file written by TablebaseGenerator.
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != BOARD_SIZE){
+                throw new IOException("Not a 5*5 tablebase: " + file);
+            }
+            int maxPieces = buffer.getInt(8);
+            if (maxPieces < 2 || maxPieces > MAX_PIECES || buffer.limit() != HEADER_SIZE + fileSize(maxPieces)){
+                throw new IOException("Broken tablebase: " + file);
+            }
+            return new Tablebase(buffer, maxPieces);
+        }
+    }
+
+    public static synchronized Tablebase getDefault(){
+        //The tablebase of DEFAULT_FILE in the working directory, shared by all the AIs. null if there is no such file.
+        if (!defaultLoaded){
+            defaultLoaded = true;
+            Path file = Paths.get(DEFAULT_FILE);
+            if (Files.isRegularFile(file)){
+                try {
+                    defaultTablebase = open(file);
+                }catch (IOException e){
+                    System.err.println("Can't load the tablebase: " + e.getMessage());
+                }
+            }
+        }
+        return defaultTablebase;
+    }
+
+    public int getMaxPieces() {
+        return maxPieces;
+    }
+
+    public int probe(ChessBoard board, PlayerColor playerToMove){
+        //Return the value byte of the position for the player to move, or NOT_FOUND if it is not in the table.
+        if (board.boardSize != BOARD_SIZE){
+            return NOT_FOUND;
+        }
+        int blackNum = Long.bitCount(board.blackCheckers);
+        int whiteNum = Long.bitCount(board.whiteCheckers);
+        if (blackNum == 0 || whiteNum == 0 || blackNum + whiteNum > maxPieces){
+            return NOT_FOUND;
+        }
+        return buffer.get(HEADER_SIZE + classOffsets[blackNum][whiteNum]
+                + index(board.blackCheckers, board.whiteCheckers, playerToMove));
+    }
+
+    public static boolean isWin(int value){
+        return value > 0 && value != NOT_FOUND;
+    }
+
+    public static boolean isLoss(int value){
+        return value < 0 && value != NOT_FOUND;
+    }
+
+    public static int distanceOf(int value){    //Plies to the end of the game of a win or a loss.
+        return Math.abs(value) - 1;
+    }
+
+    public static byte win(int distance){
+        if (distance + 1 > Byte.MAX_VALUE){
+            throw new IllegalStateException("Distance too long for the tablebase: " + distance);
+        }
+        return (byte) (distance + 1);
+    }
+
+    public static byte loss(int distance){
+        if (distance + 1 > Byte.MAX_VALUE){
+            throw new IllegalStateException("Distance too long for the tablebase: " + distance);
+        }
+        return (byte) -(distance + 1);
+    }
+
+    public static int positionNum(int blackNum, int whiteNum){  //Number of the ways to put the checkers of a class on the board.
+        return BINOMIAL[SQUARE_NUM][blackNum] * BINOMIAL[SQUARE_NUM - blackNum][whiteNum];
+    }
+
+    public static int[][] classOffsets(int maxPieces){  //Offset of each class in the table after the header, indexed [black][white].
+        int[][] offsets = new int[maxPieces][maxPieces];
+        long offset = 0;
+        for (int total = 2; total <= maxPieces; total++){
+            for (int blackNum = 1; blackNum < total; blackNum++){
+                offsets[blackNum][total - blackNum] = (int) offset;
+                offset += 2L * positionNum(blackNum, total - blackNum);
+            }
+        }
+        if (offset > Integer.MAX_VALUE){
+            throw new IllegalArgumentException("Too many checkers for the tablebase: " + maxPieces);
+        }
+        return offsets;
+    }
+
+    public static long fileSize(int maxPieces){     //Bytes of the table after the header.
+        long size = 0;
+        for (int total = 2; total <= maxPieces; total++){
+            for (int blackNum = 1; blackNum < total; blackNum++){
+                size += 2L * positionNum(blackNum, total - blackNum);
+            }
+        }
+        return size;
+    }
+
+    public static int index(long black, long white, PlayerColor playerToMove){  //Index of the position inside its class.
+        int whiteRank = 0;
+        int i = 1;
+        for (long mask = white; mask != 0; mask &= mask - 1){   //Number the white squares among the squares without black checkers.
+            int square = Long.numberOfTrailingZeros(mask);
+            whiteRank += BINOMIAL[square - Long.bitCount(black & ((1L << square) - 1))][i++];
+        }
+        int rank = rank(black) * BINOMIAL[SQUARE_NUM - Long.bitCount(black)][Long.bitCount(white)] + whiteRank;
+        return rank * 2 + (playerToMove == PLAYER_BK ? 0 : 1);
+    }
+
+    private static int rank(long mask){     //Colexicographic rank of the set of squares.
+        int rank = 0;
+        int i = 1;
+        for (; mask != 0; mask &= mask - 1){
+            rank += BINOMIAL[Long.numberOfTrailingZeros(mask)][i++];
+        }
+        return rank;
+    }
+
+    public static long unrank(int rank, int num, int squareNum){    //The set of num squares out of squareNum with the given rank.
+        long mask = 0;
+        int square = squareNum - 1;
+        for (int i = num; i >= 1; i--){
+            while (BINOMIAL[square][i] > rank){
+                square--;
+            }
+            mask |= 1L << square;
+            rank -= BINOMIAL[square][i];
+            square--;
+        }
+        return mask;
+    }
+
+    public static long spread(long mask, long skipped){     //Move the bits of mask onto the squares not in skipped, in order.
+        long result = 0;
+        long free = ~skipped & ((1L << SQUARE_NUM) - 1);
+        for (int i = 0; free != 0; i++, free &= free - 1){
+            if ((mask & (1L << i)) != 0){
+                result |= free & -free;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,183 @@
+package main;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static main.PlayerColor.PLAYER_BK;
+import static main.PlayerColor.PLAYER_WH;
+
+/**
+ * Writes the 5*5 tablebase read by Tablebase, solving the classes from the fewest checkers up.
+ * A capture moves to a class with fewer checkers, which is already solved, so each class only depends on itself.
+ *
+ * Inside a class, the positions are solved by distance: round d finds the wins in d plies, the positions with a move
+ * to a loss in d - 1 plies, and the losses in d plies, the positions whose moves all go to wins in less than d plies.
+ * The rounds go on until one finds nothing and no solved class has a longer distance. What is left is a draw.
+ * Each round is split over the threads, which only write the positions of their own part.
+ *
+ * Usage: java main.TablebaseGenerator [-pieces N] [-threads N] [-out FILE]
+ */
+public class TablebaseGenerator {
+    private static final int CHUNK_SIZE = 1 << 14;  //Positions of a class handed to a thread at once.
+    private int maxPieces = 5;
+    private int threadNum = Runtime.getRuntime().availableProcessors();
+    private Path file = Paths.get(Tablebase.DEFAULT_FILE);
+    private byte[][][] values;  //Values of each class, indexed [black][white][index].
+    private int maxDistance = 0;    //Longest distance of the classes solved.
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        TablebaseGenerator generator = new TablebaseGenerator();
+        for (int i = 0; i + 1 < args.length; i += 2){
+            String value = args[i + 1];
+            switch (args[i]){
+                case "-pieces":
+                    generator.maxPieces = Integer.parseInt(value);
+                    break;
+                case "-threads":
+                    generator.threadNum = Integer.parseInt(value);
+                    break;
+                case "-out":
+                    generator.file = Paths.get(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (generator.maxPieces < 2 || generator.maxPieces > Tablebase.MAX_PIECES){
+            throw new IllegalArgumentException("Illegal number of checkers: " + generator.maxPieces);
+        }
+        generator.run();
+    }
+
+    public void run() throws IOException, InterruptedException, ExecutionException {
+        long start = System.currentTimeMillis();
+        values = new byte[maxPieces][maxPieces][];
+        ExecutorService pool = Executors.newFixedThreadPool(threadNum);
+        try {
+            for (int total = 2; total <= maxPieces; total++){
+                for (int blackNum = 1; blackNum < total; blackNum++){
+                    solveClass(pool, blackNum, total - blackNum);
+                }
+            }
+        }finally {
+            pool.shutdown();
+        }
+        write();
+        System.out.printf("Wrote %s with up to %d checkers in %d ms.%n", file, maxPieces, System.currentTimeMillis() - start);
+    }
+
+    private void solveClass(ExecutorService pool, int blackNum, int whiteNum) throws InterruptedException, ExecutionException {
+        int positionNum = Tablebase.positionNum(blackNum, whiteNum);
+        values[blackNum][whiteNum] = new byte[positionNum * 2];
+        int classDistance = 0;
+        for (int distance = 0; ; distance++){
+            final int round = distance;
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int first = 0; first < positionNum; first += CHUNK_SIZE){
+                final int from = first;
+                final int to = Math.min(first + CHUNK_SIZE, positionNum);
+                futures.add(pool.submit(() -> solveChunk(blackNum, whiteNum, from, to, round)));
+            }
+            int solvedNum = 0;
+            for (Future<Integer> future: futures){
+                solvedNum += future.get();
+            }
+            if (solvedNum > 0){
+                classDistance = distance;
+            }else if (distance > maxDistance){  //Nothing new and no solved class can give a longer distance.
+                break;
+            }
+        }
+        maxDistance = Math.max(maxDistance, classDistance);
+        int[] counts = new int[3];
+        for (byte value: values[blackNum][whiteNum]){
+            counts[value > 0 ? 0 : value < 0 ? 2 : 1]++;
+        }
+        System.out.printf("%d black %d white: %d wins, %d draws, %d losses, longest %d plies.%n",
+                blackNum, whiteNum, counts[0], counts[1], counts[2], classDistance);
+    }
+
+    private int solveChunk(int blackNum, int whiteNum, int from, int to, int distance){
+        //Solve the positions in [from, to) of the class at the distance of the round. Return how many were solved.
+        byte[] classValues = values[blackNum][whiteNum];
+        ChessBoard board = new ChessBoard(Tablebase.BOARD_SIZE, 0, 0);
+        int[] moves = new int[AI.MAX_MOVES];
+        int whiteRankNum = Tablebase.positionNum(blackNum, whiteNum) / Tablebase.positionNum(blackNum, 0);
+        int solvedNum = 0;
+        for (int rank = from; rank < to; rank++){
+            if (classValues[rank * 2] != 0 && classValues[rank * 2 + 1] != 0){
+                continue;
+            }
+            long black = Tablebase.unrank(rank / whiteRankNum, blackNum, Tablebase.SQUARE_NUM);
+            long white = Tablebase.spread(Tablebase.unrank(rank % whiteRankNum, whiteNum, Tablebase.SQUARE_NUM - blackNum), black);
+            board.setCheckers(black, white);
+            for (int side = 0; side < 2; side++){
+                if (classValues[rank * 2 + side] != 0){
+                    continue;
+                }
+                byte value = solve(board, side == 0 ? PLAYER_BK : PLAYER_WH, distance, moves);
+                if (value != 0){
+                    classValues[rank * 2 + side] = value;
+                    solvedNum++;
+                }
+            }
+        }
+        return solvedNum;
+    }
+
+    private byte solve(ChessBoard board, PlayerColor player, int distance, int[] moves){
+        //Return the value of the position if it is decided at the distance of the round, otherwise 0.
+        PlayerColor opponent = player == PLAYER_BK ? PLAYER_WH : PLAYER_BK;
+        if (distance == 0){     //The game is over: the opponent just moved, so it wins first if connected.
+            if (board.continuousCheck(opponent)){
+                return Tablebase.loss(0);
+            }else if (board.continuousCheck(player)){
+                return Tablebase.win(0);
+            }
+        }
+        int moveNum = board.generateMoves(player, moves);
+        if (moveNum == 0){  //No move at all is a loss, like in the search.
+            return distance == 0 ? Tablebase.loss(0) : 0;
+        }
+        if (distance == 0){
+            return 0;
+        }
+        boolean allWins = true;     //Whether every move goes to a win of the opponent found in an earlier round.
+        for (int i = 0; i < moveNum; i++){
+            board.applyMove(moves[i], player);
+            int value = values[Long.bitCount(board.blackCheckers)][Long.bitCount(board.whiteCheckers)]
+                    [Tablebase.index(board.blackCheckers, board.whiteCheckers, opponent)];
+            board.undoMove();
+            if (value < 0 && Tablebase.distanceOf(value) == distance - 1){
+                return Tablebase.win(distance);
+            }
+            if (value <= 0 || Tablebase.distanceOf(value) >= distance){
+                allWins = false;
+            }
+        }
+        return allWins ? Tablebase.loss(distance) : 0;
+    }
+
+    private void write() throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)){
+            ByteBuffer header = ByteBuffer.allocate(Tablebase.HEADER_SIZE);
+            header.putInt(Tablebase.MAGIC).putInt(Tablebase.BOARD_SIZE).putInt(maxPieces);
+            out.write(header.array());
+            for (int total = 2; total <= maxPieces; total++){
+                for (int blackNum = 1; blackNum < total; blackNum++){
+                    out.write(values[blackNum][total - blackNum]);
+                }
+            }
+        }
+    }
+}
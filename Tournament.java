@@ -0,0 +1,238 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static main.PlayerColor.PLAYER_BK;
+import static main.PlayerColor.PLAYER_WH;
+
+/**
+ * Headless self-play between two AI configurations. The games run concurrently, one game per pool thread, and the
+ * engines swap colors every game. Each game starts with a few random plies so the games differ from each other.
+ *
+ * Usage: java main.Tournament [-games N] [-size 5|6] [-threads N] [-openingPlies N] [-maxPlies N] [-seed N]
+ *                             [-a CONFIG] [-b CONFIG]
+ * CONFIG is a comma separated list of difficulty=1..3, depth=N, time=MS, eval=MIN_DISTANCE|MAX_DISTANCE|SUM_DISTANCE,
+ * for example -a difficulty=3,depth=5,time=200. difficulty=4 plays the Monte Carlo tree search, so -a difficulty=4,time=1000
+ * -b difficulty=3,time=1000 compares it with the alpha-beta search at the same time per move.
+ */
+public class Tournament {
+
+    public static class EngineConfig {  //Settings of one side of the tournament.
+        private int difficulty = 3;
+        private int depth = -1;     //-1 keeps the depth of the difficulty.
+        private long time = 1000;
+        private CenterDistance eval = null;     //null keeps the evaluation of the difficulty.
+
+        public static EngineConfig parse(String text){
+            EngineConfig config = new EngineConfig();
+            for (String pair: text.split(",")){
+                String[] keyValue = pair.split("=");
+                if (keyValue.length != 2){
+                    throw new IllegalArgumentException("Illegal engine setting: " + pair);
+                }
+                switch (keyValue[0]){
+                    case "difficulty":
+                        config.difficulty = Integer.parseInt(keyValue[1]);
+                        break;
+                    case "depth":
+                        config.depth = Integer.parseInt(keyValue[1]);
+                        break;
+                    case "time":
+                        config.time = Long.parseLong(keyValue[1]);
+                        break;
+                    case "eval":
+                        config.eval = CenterDistance.valueOf(keyValue[1]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Illegal engine setting: " + pair);
+                }
+            }
+            return config;
+        }
+
+        public AI createAI(PlayerColor computer){   //Create an engine playing the given color.
+            AI ai = new AI(difficulty, computer == PLAYER_BK ? PLAYER_WH : PLAYER_BK, computer);
+            if (depth > 0){
+                ai.setDepthLimit(depth);
+            }
+            ai.setTimeLimit(time);
+            if (eval != null){
+                ai.setCenterDistance(eval);
+            }
+            ai.setVerbose(false);
+            ai.setMetricsEnabled(false);
+            return ai;
+        }
+
+        @Override
+        public String toString() {
+            return "difficulty=" + difficulty + ",depth=" + (depth > 0 ? String.valueOf(depth) : "default")
+                    + ",time=" + time + (eval != null ? ",eval=" + eval : "");
+        }
+    }
+
+    private static class GameResult {   //Result of one game, seen from engine A.
+        int score;  //1 if A won, 0 for a draw, -1 if B won.
+        long[] nodes = new long[2];     //Nodes searched by A and B.
+        long[] searchTime = new long[2];    //Time in ns spent searching by A and B.
+        int[] moves = new int[2];   //Number of moves searched by A and B.
+    }
+
+    private int gameNum = 100;
+    private int boardSize = 5;
+    private int threadNum = Runtime.getRuntime().availableProcessors();
+    private int openingPlies = 4;
+    private int maxPlies = 200;     //The game is a draw if nobody wins after this many plies.
+    private long seed = 1;
+    private EngineConfig configA = EngineConfig.parse("difficulty=3,time=1000");
+    private EngineConfig configB = EngineConfig.parse("difficulty=1,time=1000");
+
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        Tournament tournament = new Tournament();
+        for (int i = 0; i + 1 < args.length; i += 2){
+            String value = args[i + 1];
+            switch (args[i]){
+                case "-games":
+                    tournament.gameNum = Integer.parseInt(value);
+                    break;
+                case "-size":
+                    tournament.boardSize = Integer.parseInt(value);
+                    break;
+                case "-threads":
+                    tournament.threadNum = Integer.parseInt(value);
+                    break;
+                case "-openingPlies":
+                    tournament.openingPlies = Integer.parseInt(value);
+                    break;
+                case "-maxPlies":
+                    tournament.maxPlies = Integer.parseInt(value);
+                    break;
+                case "-seed":
+                    tournament.seed = Long.parseLong(value);
+                    break;
+                case "-a":
+                    tournament.configA = EngineConfig.parse(value);
+                    break;
+                case "-b":
+                    tournament.configB = EngineConfig.parse(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        tournament.run();
+    }
+
+    public void run() throws InterruptedException, ExecutionException {     //Play all the games and print the summary.
+        System.out.printf("A: %s%nB: %s%n%d games on %d*%d with %d threads.%n", configA, configB, gameNum, boardSize, boardSize, threadNum);
+        ExecutorService pool = Executors.newFixedThreadPool(threadNum);
+        List<Future<GameResult>> futures = new ArrayList<>();
+        for (int i = 0; i < gameNum; i++){
+            final int game = i;
+            futures.add(pool.submit(() -> playGame(game)));
+        }
+        int wins = 0, draws = 0, losses = 0;
+        long[] nodes = new long[2];
+        long[] searchTime = new long[2];
+        int[] moves = new int[2];
+        for (Future<GameResult> future: futures){
+            GameResult result = future.get();
+            if (result.score > 0){
+                wins++;
+            }else if (result.score < 0){
+                losses++;
+            }else{
+                draws++;
+            }
+            for (int side = 0; side < 2; side++){
+                nodes[side] += result.nodes[side];
+                searchTime[side] += result.searchTime[side];
+                moves[side] += result.moves[side];
+            }
+        }
+        pool.shutdown();
+        System.out.printf("A wins %d, draws %d, A losses %d. A scores %.1f%%.%n", wins, draws, losses,
+                gameNum == 0 ? 0.0 : 100.0 * (wins + 0.5 * draws) / gameNum);
+        for (int side = 0; side < 2; side++){
+            System.out.printf("%s: %.0f nodes/s, %.1f ms average move latency over %d moves.%n", side == 0 ? "A" : "B",
+                    searchTime[side] == 0 ? 0.0 : 1e9 * nodes[side] / searchTime[side],
+                    moves[side] == 0 ? 0.0 : searchTime[side] / 1e6 / moves[side], moves[side]);
+        }
+    }
+
+    private GameResult playGame(int game){
+        /*
+        Play one game. Engine A is black in the even games and white in the odd ones. Black moves first.
+        Like Main, the player who just moved wins if its checkers are continuous, then the opponent is checked.
+        A player without any valid move loses, like in the search.
+         */
+        GameResult result = new GameResult();
+        Random random = new Random(seed * 1000003 + game);
+        int sideOfBlack = game % 2;     //0 if A plays black, 1 if B does.
+        AI black = (sideOfBlack == 0 ? configA : configB).createAI(PLAYER_BK);
+        AI white = (sideOfBlack == 0 ? configB : configA).createAI(PLAYER_WH);
+        ChessBoard board = randomOpening(black, random);
+        PlayerColor currentPlayer = openingPlies % 2 == 0 ? PLAYER_BK : PLAYER_WH;
+        for (int ply = openingPlies; ply < maxPlies; ply++){
+            AI ai = currentPlayer == PLAYER_BK ? black : white;
+            int side = currentPlayer == PLAYER_BK ? sideOfBlack : 1 - sideOfBlack;
+            if (ai.generateMoves(board, currentPlayer).isEmpty()){
+                result.score = side == 0 ? -1 : 1;
+                return result;
+            }
+            long start = System.nanoTime();
+            ai.aiInitialize();
+            Move move = ai.alphaBetaSearch(board);
+            result.searchTime[side] += System.nanoTime() - start;
+            result.nodes[side] += ai.getNodeNum();
+            result.moves[side]++;
+            board.makeMove(move, currentPlayer);
+            PlayerColor opponent = currentPlayer == PLAYER_BK ? PLAYER_WH : PLAYER_BK;
+            PlayerColor winner = null;
+            if (board.continuousCheck(currentPlayer)){
+                winner = currentPlayer;
+            }else if (board.continuousCheck(opponent)){
+                winner = opponent;
+            }
+            if (winner != null){
+                int winnerSide = winner == PLAYER_BK ? sideOfBlack : 1 - sideOfBlack;
+                result.score = winnerSide == 0 ? 1 : -1;
+                return result;
+            }
+            currentPlayer = opponent;
+        }
+        result.score = 0;
+        return result;
+    }
+
+    private ChessBoard randomOpening(AI ai, Random random){
+        /*
+        Play openingPlies random moves from the initial board, retrying until nobody has won. A player left without any
+        move has lost too, so such an opening is retried as well, also when it is the player to move after the opening.
+         */
+        while (true){
+            ChessBoard board = new ChessBoard(boardSize);
+            PlayerColor player = PLAYER_BK;
+            boolean over = false;
+            for (int ply = 0; ply < openingPlies && !over; ply++){
+                List<Move> moves = ai.generateMoves(board, player);
+                if (moves.isEmpty()){
+                    over = true;
+                    break;
+                }
+                board.makeMove(moves.get(random.nextInt(moves.size())), player);
+                over = board.continuousCheck(PLAYER_BK) || board.continuousCheck(PLAYER_WH);
+                player = player == PLAYER_BK ? PLAYER_WH : PLAYER_BK;
+            }
+            if (!over && !ai.generateMoves(board, player).isEmpty()){
+                return board;
+            }
+        }
+    }
+}
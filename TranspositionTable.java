@@ -0,0 +1,134 @@
+package main;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size table of searched positions, kept in primitive arrays so a probe or a store never allocates.
+ * Entries live in buckets of two slots. A new entry replaces, in order of preference, the slot holding the
+ * same position, an empty slot, a slot left by an older search, or the slot searched to the smaller depth.
+ * The table is shared by the search workers without locks: each slot keeps the key xor-ed with the data word, so an
+ * entry torn by two threads writing at the same time no longer matches its key and is read as a miss.
+ */
+public class TranspositionTable {
+    public static final int DEFAULT_SIZE = 1 << 18;    //Default number of entries.
+    public static final int EXACT = 0;  //The score is the exact value of the position.
+    public static final int LOWER_BOUND = 1;    //The search failed high, the real value is at least the score.
+    public static final int UPPER_BOUND = 2;    //The search failed low, the real value is at most the score.
+    public static final int NO_MOVE = 0;    //Stored when the node has no best move.
+
+    /*
+    Layout of a data word:
+    bits 0-31 score (float bits), bits 32-45 best move, bits 46-53 depth, bits 54-55 bound type, bits 56-62 age, bit 63 used flag.
+     */
+    private static final long USED = 1L << 63;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int bucketMask;
+    private volatile int age = 0;    //Increased by every search, so entries of old searches get replaced first.
+    private final LongAdder probeNum = new LongAdder();     //Number of probes.
+    private final LongAdder hitNum = new LongAdder();       //Number of probes that found the position.
+    private final LongAdder collisionNum = new LongAdder();  //Number of probes that found the bucket taken by other positions.
+
+    public TranspositionTable(int size){    //The size is rounded down to a power of two, with at least one bucket.
+        int entries = Integer.highestOneBit(Math.max(size, 2));
+        this.keys = new long[entries];
+        this.data = new long[entries];
+        this.bucketMask = entries / 2 - 1;
+    }
+
+    public void newSearch(){    //Called before every search. Age the entries and reset the statistics.
+        age = (age + 1) & 0x7F;
+        probeNum.reset();
+        hitNum.reset();
+        collisionNum.reset();
+    }
+
+    public void clear(){    //Forget all the stored positions.
+        Arrays.fill(keys, 0);
+        Arrays.fill(data, 0);
+    }
+
+    public long probe(long key){
+        /*
+        Look up a position. Return its data word, or 0 if the position is not stored.
+        Use scoreOf, moveOf, depthOf and boundOf to read the word.
+         */
+        probeNum.increment();
+        int slot = (int) (key & bucketMask) << 1;
+        long word0 = data[slot];
+        long word1 = data[slot + 1];
+        if (word0 != 0 && (keys[slot] ^ word0) == key){
+            hitNum.increment();
+            return word0;
+        }
+        if (word1 != 0 && (keys[slot + 1] ^ word1) == key){
+            hitNum.increment();
+            return word1;
+        }
+        if (word0 != 0 && word1 != 0){
+            collisionNum.increment();
+        }
+        return 0;
+    }
+
+    public void store(long key, int depth, int bound, float score, int move){   //Store the result of a search of the given depth.
+        int slot = (int) (key & bucketMask) << 1;
+        long word0 = data[slot];
+        long word1 = data[slot + 1];
+        int victim = slot;
+        if (word1 != 0 && (keys[slot + 1] ^ word1) == key){
+            victim = slot + 1;
+        }else if (!(word0 != 0 && (keys[slot] ^ word0) == key)){
+            victim = replaceValue(word0) <= replaceValue(word1) ? slot : slot + 1;
+        }
+        long word = USED
+                | ((long) age << 56)
+                | ((long) bound << 54)
+                | ((long) Math.min(depth, 0xFF) << 46)
+                | ((long) (move & 0x3FFF) << 32)
+                | (Float.floatToIntBits(score) & 0xFFFFFFFFL);
+        keys[victim] = key ^ word;
+        data[victim] = word;
+    }
+
+    private int replaceValue(long word){    //How much an entry is worth keeping. Empty slots are worth nothing, entries of older searches little.
+        if (word == 0){
+            return -1;
+        }
+        int value = depthOf(word);
+        if (((word >>> 56) & 0x7F) == age){
+            value += 0x100;
+        }
+        return value;
+    }
+
+    public static float scoreOf(long word){
+        return Float.intBitsToFloat((int) word);
+    }
+
+    public static int moveOf(long word){
+        return (int) (word >>> 32) & 0x3FFF;
+    }
+
+    public static int depthOf(long word){
+        return (int) (word >>> 46) & 0xFF;
+    }
+
+    public static int boundOf(long word){
+        return (int) (word >>> 54) & 0x3;
+    }
+
+    public long getProbeNum() {
+        return probeNum.sum();
+    }
+
+    public long getHitNum() {
+        return hitNum.sum();
+    }
+
+    public long getCollisionNum() {
+        return collisionNum.sum();
+    }
+}